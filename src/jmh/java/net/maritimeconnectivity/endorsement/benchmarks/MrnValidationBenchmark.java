@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.benchmarks;
+
+import net.maritimeconnectivity.endorsement.utils.MrnUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares MrnUtil.parseMrn with the regular expression based validation it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MrnValidationBenchmark {
+
+    @Param({"org", "service", "longValid", "longInvalid"})
+    public String input;
+
+    private String mrn;
+
+    @Setup
+    public void setup() {
+        // About 250 characters. At around 1 KB the regex fails with a StackOverflowError instead of returning.
+        StringBuilder longNss = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            longNss.append("a%2F:");
+        }
+        switch (input) {
+            case "org":
+                mrn = "urn:mrn:mcp:org:idp1:dma";
+                break;
+            case "service":
+                mrn = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+                break;
+            case "longValid":
+                mrn = "urn:mrn:mcp:service:idp1:dma:instance:" + longNss;
+                break;
+            default:
+                // Fails on the very last character, after the whole string has been matched
+                mrn = "urn:mrn:mcp:service:idp1:dma:instance:" + longNss + " ";
+        }
+    }
+
+    @Benchmark
+    public boolean parser() {
+        try {
+            return MrnUtil.parseMrn(mrn) != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public boolean regex() {
+        try {
+            return validateWithRegex(mrn);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The validation as it was done before MrnUtil.parseMrn
+     */
+    private static boolean validateWithRegex(String mrn) {
+        if (mrn == null || mrn.trim().isEmpty()) {
+            throw new IllegalArgumentException("MRN is empty");
+        }
+        if (!MrnUtil.MRN_PATTERN.matcher(mrn).matches()) {
+            throw new IllegalArgumentException("MRN is not in a valid format");
+        }
+        String[] parts = mrn.split(":");
+        if (parts[3].equals("service")) {
+            Pattern serviceTypes = Pattern.compile("^(specification|design|instance)$", Pattern.CASE_INSENSITIVE);
+            if (!MrnUtil.MRN_SERVICE_PATTERN.matcher(mrn).matches() || parts.length < 8 || !serviceTypes.matcher(parts[6]).matches()) {
+                throw new IllegalArgumentException("MRN is not in a valid format for a service");
+            }
+        }
+        return true;
+    }
+}
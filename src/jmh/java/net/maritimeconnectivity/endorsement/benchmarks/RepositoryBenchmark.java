@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.benchmarks;
+
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import net.maritimeconnectivity.endorsement.utils.KeysetCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every EndorsementRepository finder against an in-memory H2 database created by the Flyway migrations and
+ * seeded with {@link #rows} endorsements. The rows are spread over {@link #ORGS} orgs, so each org has rows / ORGS
+ * endorsements and every service MRN is endorsed by all orgs. Ten consecutive services share a parent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private static final int ORGS = 100;
+    private static final String VERSION = "1.0";
+    private static final Pageable PAGE = PageRequest.of(0, 20, Sort.by("createdAt", "id"));
+    private static final Pageable KEYSET_PAGE = PageRequest.of(0, 21);
+
+    @Param({"10000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private EndorsementRepository repository;
+
+    private String orgMrn;
+    private String serviceMrn;
+    private String parentMrn;
+    private List<String> serviceMrns;
+    private List<ServiceReference> serviceReferences;
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({PropertyPlaceholderAutoConfiguration.class, DataSourceAutoConfiguration.class,
+            FlywayAutoConfiguration.class, HibernateJpaAutoConfiguration.class, TransactionAutoConfiguration.class})
+    @EntityScan(basePackageClasses = Endorsement.class)
+    @EnableJpaRepositories(basePackageClasses = EndorsementRepository.class)
+    static class RepositoryConfig {
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(RepositoryConfig.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.net.maritimeconnectivity.endorsement=WARN");
+        repository = context.getBean(EndorsementRepository.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        Date now = new Date();
+        List<Endorsement> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Endorsement endorsement = new Endorsement();
+            endorsement.setOrgMrn(orgMrn(i % ORGS));
+            endorsement.setOrgName("Org " + (i % ORGS));
+            endorsement.setServiceMrn(serviceMrn(i / ORGS));
+            endorsement.setServiceVersion(VERSION);
+            endorsement.setServiceLevel("instance");
+            endorsement.setUserMrn("urn:mrn:mcp:user:idp1:org:user");
+            endorsement.setParentMrn(parentMrn(i / ORGS / 10));
+            endorsement.setParentVersion(VERSION);
+            endorsement.setCreatedAt(now);
+            endorsement.setUpdatedAt(now);
+            batch.add(endorsement);
+            if (batch.size() == 1000 || i == rows - 1) {
+                List<Endorsement> chunk = batch;
+                transactionTemplate.execute(status -> {
+                    repository.upsertAll(chunk);
+                    return null;
+                });
+                batch = new ArrayList<>();
+            }
+        }
+
+        int services = Math.max(1, rows / ORGS);
+        orgMrn = orgMrn(ORGS / 2);
+        serviceMrn = serviceMrn(services / 2);
+        parentMrn = parentMrn(services / 2 / 10);
+        serviceMrns = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            serviceMrns.add(serviceMrn((services / 2 + i) % services));
+        }
+        serviceReferences = new ArrayList<>();
+        for (String mrn : serviceMrns) {
+            ServiceReference reference = new ServiceReference();
+            reference.setServiceMrn(mrn);
+            reference.setServiceVersion(VERSION);
+            serviceReferences.add(reference);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private static String orgMrn(int i) {
+        return "urn:mrn:mcp:org:idp1:org" + i;
+    }
+
+    private static String serviceMrn(int i) {
+        return "urn:mrn:mcp:service:idp1:org:instance:service" + i;
+    }
+
+    private static String parentMrn(int i) {
+        return "urn:mrn:mcp:service:idp1:org:design:design" + i;
+    }
+
+    @Benchmark
+    public Page<Endorsement> findByOrgMrnAndServiceLevel() {
+        return repository.findByOrgMrnAndServiceLevel(orgMrn, "instance", PAGE);
+    }
+
+    @Benchmark
+    public Page<Endorsement> findByServiceMrnAndServiceVersionPage() {
+        return repository.findByServiceMrnAndServiceVersion(serviceMrn, VERSION, PAGE);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByServiceMrnAndServiceVersionList() {
+        return repository.findByServiceMrnAndServiceVersion(serviceMrn, VERSION);
+    }
+
+    @Benchmark
+    public Endorsement findByOrgMrnAndServiceMrnAndServiceVersion() {
+        return repository.findByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, VERSION);
+    }
+
+    @Benchmark
+    public Endorsement findByOrgMrnAndServiceMrn() {
+        return repository.findByOrgMrnAndServiceMrn(orgMrn, serviceMrn);
+    }
+
+    @Benchmark
+    public Page<Endorsement> findByParentMrnAndParentVersion() {
+        return repository.findByParentMrnAndParentVersion(parentMrn, VERSION, PAGE);
+    }
+
+    @Benchmark
+    public Page<Endorsement> findByParentMrnAndParentVersionAndOrgMrn() {
+        return repository.findByParentMrnAndParentVersionAndOrgMrn(parentMrn, VERSION, orgMrn, PAGE);
+    }
+
+    @Benchmark
+    public Page<Endorsement> findByServiceMrnIn() {
+        return repository.findByServiceMrnIn(serviceMrns, PAGE);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByServiceReferences() {
+        return repository.findByServiceReferences(serviceReferences);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByOrgMrnAndServiceLevelAfter() {
+        KeysetCursor cursor = KeysetCursor.first();
+        return repository.findByOrgMrnAndServiceLevelAfter(orgMrn, "instance", cursor.getCreatedAt(), cursor.getId(), KEYSET_PAGE);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByServiceMrnAndServiceVersionAfter() {
+        KeysetCursor cursor = KeysetCursor.first();
+        return repository.findByServiceMrnAndServiceVersionAfter(serviceMrn, VERSION, cursor.getCreatedAt(), cursor.getId(), KEYSET_PAGE);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByParentMrnAndParentVersionAfter() {
+        KeysetCursor cursor = KeysetCursor.first();
+        return repository.findByParentMrnAndParentVersionAfter(parentMrn, VERSION, cursor.getCreatedAt(), cursor.getId(), KEYSET_PAGE);
+    }
+
+    @Benchmark
+    public List<Endorsement> findByParentMrnAndParentVersionAndOrgMrnAfter() {
+        KeysetCursor cursor = KeysetCursor.first();
+        return repository.findByParentMrnAndParentVersionAndOrgMrnAfter(parentMrn, VERSION, orgMrn, cursor.getCreatedAt(), cursor.getId(), KEYSET_PAGE);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing endorsements as JSON the way the controller does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"20"})
+    public int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Endorsement endorsement;
+    private Page<Endorsement> page;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        endorsement = createEndorsement(0);
+        List<Endorsement> content = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            content.add(createEndorsement(i));
+        }
+        page = new PageImpl<>(content, PageRequest.of(0, pageSize), 1000);
+    }
+
+    @Benchmark
+    public byte[] endorsement() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(endorsement);
+    }
+
+    @Benchmark
+    public byte[] endorsementPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    private static Endorsement createEndorsement(int i) {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn("urn:mrn:mcp:org:idp1:dma");
+        endorsement.setOrgName("DMA");
+        endorsement.setServiceMrn("urn:mrn:mcp:service:idp1:dma:instance:nw-nm-" + i);
+        endorsement.setServiceVersion("0.1.2");
+        endorsement.setServiceLevel("instance");
+        endorsement.setUserMrn("urn:mrn:mcp:user:idp1:dma:tgc");
+        endorsement.setParentMrn("urn:mrn:mcp:service:idp1:dma:design:nw-nm");
+        endorsement.setParentVersion("0.3.2");
+        endorsement.setCreatedAt(new Date());
+        endorsement.setUpdatedAt(new Date());
+        return endorsement;
+    }
+}
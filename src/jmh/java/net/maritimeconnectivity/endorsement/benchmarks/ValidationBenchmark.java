@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.benchmarks;
+
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.validators.EndorsementValidator;
+import net.maritimeconnectivity.endorsement.validators.InPredefinedList;
+import net.maritimeconnectivity.endorsement.validators.InPredefinedListValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating an incoming endorsement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    private EndorsementValidator endorsementValidator;
+    private InPredefinedListValidator serviceLevelValidator;
+    private Endorsement validEndorsement;
+    private Endorsement invalidEndorsement;
+
+    @Setup
+    public void setup() throws Exception {
+        endorsementValidator = new EndorsementValidator();
+        endorsementValidator.afterPropertiesSet();
+        serviceLevelValidator = new InPredefinedListValidator();
+        serviceLevelValidator.initialize(Endorsement.class.getDeclaredField("serviceLevel").getAnnotation(InPredefinedList.class));
+
+        validEndorsement = new Endorsement();
+        validEndorsement.setOrgMrn("urn:mrn:mcp:org:idp1:dma");
+        validEndorsement.setOrgName("DMA");
+        validEndorsement.setServiceMrn("urn:mrn:mcp:service:idp1:dma:instance:nw-nm");
+        validEndorsement.setServiceVersion("0.1.2");
+        validEndorsement.setServiceLevel("instance");
+        validEndorsement.setUserMrn("urn:mrn:mcp:user:idp1:dma:tgc");
+        validEndorsement.setParentMrn("urn:mrn:mcp:service:idp1:dma:design:nw-nm");
+        validEndorsement.setParentVersion("0.3.2");
+
+        invalidEndorsement = new Endorsement();
+        invalidEndorsement.setOrgMrn("urn:mrn:mcp:org:idp1:dma");
+        invalidEndorsement.setOrgName("DMA");
+        invalidEndorsement.setServiceMrn("urn:mrn:mcp:service:idp1:dma:instance:nw-nm");
+        invalidEndorsement.setServiceVersion("0.1.2");
+        invalidEndorsement.setServiceLevel("instances");
+        invalidEndorsement.setUserMrn("urn:xxmrn:mcl:user:dma:tgc");
+        invalidEndorsement.setParentMrn("urn:mrn:mcp:service:idp1:dma:design:nw-nm");
+    }
+
+    @Benchmark
+    public Errors validateValidEndorsement() {
+        Errors errors = new BeanPropertyBindingResult(validEndorsement, "endorsement");
+        endorsementValidator.validate(validEndorsement, errors);
+        return errors;
+    }
+
+    @Benchmark
+    public Errors validateInvalidEndorsement() {
+        Errors errors = new BeanPropertyBindingResult(invalidEndorsement, "endorsement");
+        endorsementValidator.validate(invalidEndorsement, errors);
+        return errors;
+    }
+
+    /**
+     * Only accepted values, a rejected value needs a ConstraintValidatorContext from Hibernate Validator
+     */
+    @Benchmark
+    public boolean inPredefinedList() {
+        return serviceLevelValidator.isValid("specification", null) & serviceLevelValidator.isValid("Instance", null);
+    }
+}
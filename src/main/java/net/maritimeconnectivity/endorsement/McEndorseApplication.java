@@ -16,17 +16,36 @@
 
 package net.maritimeconnectivity.endorsement;
 
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportFailure;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportResult;
+import net.maritimeconnectivity.endorsement.services.EndorsementImporter;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
 
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 @SpringBootApplication
+@Slf4j
 public class McEndorseApplication extends SpringBootServletInitializer {
 
+    // Command line option naming an NDJSON file to import, the application exits when the import is done. Imports
+    // run next to a running instance, so they start without the web server, the scheduled jobs and the existence filter
+    public static final String IMPORT_OPTION = "import";
+
     @Override
     protected SpringApplicationBuilder configure(SpringApplicationBuilder application) {
         return application.sources(McEndorseApplication.class);
@@ -37,7 +56,41 @@ public class McEndorseApplication extends SpringBootServletInitializer {
         //System.setProperty("java.awt.headless", "true");
         // Set Bouncy Castle as Provider, used for Certificates.
         Security.addProvider(new BouncyCastleProvider());
-        SpringApplication.run(McEndorseApplication.class, args);
+        SpringApplicationBuilder application = new SpringApplicationBuilder(McEndorseApplication.class);
+        boolean importing = Arrays.stream(args).anyMatch(arg -> arg.startsWith("--" + IMPORT_OPTION + "="));
+        if (importing) {
+            application.web(WebApplicationType.NONE);
+            // Passed as arguments, which take precedence over application.yml
+            args = Stream.concat(Arrays.stream(args), Stream.of("--endorsement.scheduling.enabled=false",
+                    "--endorsement.existence-filter.enabled=false")).toArray(String[]::new);
+        }
+        ConfigurableApplicationContext context = application.run(args);
+        if (importing) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * Imports the NDJSON files given with --import=&lt;file&gt; (the option can be repeated) without any access
+     * checks, and logs a summary of each.
+     */
+    @Bean
+    public ApplicationRunner importRunner(EndorsementImporter endorsementImporter) {
+        return args -> {
+            List<String> files = args.getOptionValues(IMPORT_OPTION);
+            if (files == null) {
+                return;
+            }
+            for (String file : files) {
+                try (InputStream input = Files.newInputStream(Paths.get(file))) {
+                    EndorsementImportResult result = endorsementImporter.importEndorsements(input, endorsement -> true);
+                    log.info("Imported {} endorsements from {}, {} lines failed", result.getImported(), file, result.getFailed());
+                    for (EndorsementImportFailure failure : result.getFailures()) {
+                        log.warn("Line {}: {}", failure.getLine(), failure.getErrors());
+                    }
+                }
+            }
+        };
     }
 
 }
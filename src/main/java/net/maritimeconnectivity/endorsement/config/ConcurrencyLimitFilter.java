@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.maritimeconnectivity.endorsement.utils.GradientLimit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests to the endorsement API in flight at once, answering the requests over the limit with
+ * 503 Service Unavailable before any work is done for them. The limit follows the latency of the requests, see
+ * {@link GradientLimit}, so it goes down when the database slows down and up again when it recovers. Requests that
+ * run on the database executor count until their response is complete.
+ * <p>
+ * Depending on endorsement.concurrency-limit.priority, either reads (GET) or writes (everything else) are kept out of
+ * the top reserved-fraction of the limit, so that the other kind still gets through when the service is overloaded.
+ * <p>
+ * The limit and the requests in flight are published as endorsement.concurrency.limit and
+ * endorsement.concurrency.in-flight, and the shed requests as endorsement.concurrency.rejected tagged with the kind.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String API_PATHS = "/oidc/**";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Autowired
+    private ConcurrencyLimitProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private GradientLimit limit;
+
+    @PostConstruct
+    public void init() {
+        limit = new GradientLimit(properties.getInitialLimit(), properties.getMinLimit(), properties.getMaxLimit(),
+                properties.getTolerance(), properties.getSmoothing(), TimeUnit.MILLISECONDS.toNanos(properties.getWindowMillis()),
+                properties.getMinWindowSamples(), System.nanoTime());
+        Gauge.builder("endorsement.concurrency.limit", limit, GradientLimit::getLimit).register(meterRegistry);
+        Gauge.builder("endorsement.concurrency.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        String path = urlPathHelper.getPathWithinApplication(request);
+        if (!pathMatcher.match(API_PATHS, path)) {
+            return true;
+        }
+        for (String excludedPath : properties.getExcludedPaths()) {
+            if (pathMatcher.match(excludedPath, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        boolean read = HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+        int current = inFlight.incrementAndGet();
+        if (current > allowed(read)) {
+            inFlight.decrementAndGet();
+            meterRegistry.counter("endorsement.concurrency.rejected", "kind", read ? "read" : "write").increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        release(start, current, response);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(start, current, response);
+            }
+        }
+    }
+
+    private int allowed(boolean read) {
+        int allowed = limit.getLimit();
+        ConcurrencyLimitProperties.Priority priority = properties.getPriority();
+        if ((priority == ConcurrencyLimitProperties.Priority.READS && !read) || (priority == ConcurrencyLimitProperties.Priority.WRITES && read)) {
+            return (int) (allowed * (1 - properties.getReservedFraction()));
+        }
+        return allowed;
+    }
+
+    private void release(long start, int current, HttpServletResponse response) {
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        // Requests refused by the database executor are answered right away, and do not say anything about latency
+        if (response.getStatus() != HttpStatus.SERVICE_UNAVAILABLE.value()) {
+            limit.onSample(now - start, current, now);
+        }
+    }
+}
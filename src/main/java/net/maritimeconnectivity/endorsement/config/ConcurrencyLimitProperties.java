@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of the {@link ConcurrencyLimitFilter}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("endorsement.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    public enum Priority { NONE, READS, WRITES }
+
+    private boolean enabled = true;
+
+    private int initialLimit = 20;
+    private int minLimit = 5;
+    private int maxLimit = 200;
+
+    // How many times the usual latency requests may take before the limit is lowered
+    private double tolerance = 2.0;
+
+    // How much of each computed change is applied to the limit
+    private double smoothing = 0.2;
+
+    private long windowMillis = 1000;
+    private int minWindowSamples = 10;
+
+    // Which requests may use the part of the limit set aside by reserved-fraction
+    private Priority priority = Priority.READS;
+    private double reservedFraction = 0.2;
+
+    // Long running requests, which would hold on to a slot and skew the latency
+    private List<String> excludedPaths = new ArrayList<>(Arrays.asList(
+            "/oidc/endorsements/events", "/oidc/endorsements/export", "/oidc/endorsements/import"));
+}
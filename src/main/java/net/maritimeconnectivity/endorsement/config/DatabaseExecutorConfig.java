@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executor the EndorseController handlers run their database work on, so a stalled database ties up a bounded
+ * number of threads and queued requests instead of the whole request thread pool. It has one thread per connection of
+ * the Hikari pool and a bounded queue, tasks that do not fit in the queue are rejected with a
+ * RejectedExecutionException, which the controller answers with 503 Service Unavailable.
+ * <p>
+ * Besides the executor metrics tagged name=endorsement.db (executor.queued is the queue depth), the time tasks wait
+ * in the queue is published as endorsement.db-executor.wait and the rejections as endorsement.db-executor.rejected.
+ * Setting endorsement.db-executor.enabled to false runs the handlers on the request threads again.
+ */
+@Configuration
+public class DatabaseExecutorConfig {
+
+    public static final String DATABASE_EXECUTOR = "databaseExecutor";
+
+    @Bean(name = DATABASE_EXECUTOR, destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "endorsement.db-executor.enabled", matchIfMissing = true)
+    public ThreadPoolExecutor databaseExecutor(MeterRegistry meterRegistry,
+                                               @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                                               @Value("${endorsement.db-executor.queue-capacity:100}") int queueCapacity) {
+        Timer waitTimer = Timer.builder("endorsement.db-executor.wait")
+                .description("Time database tasks wait for a free executor thread")
+                .register(meterRegistry);
+        Counter rejected = meterRegistry.counter("endorsement.db-executor.rejected");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("endorsement-db-"),
+                (task, pool) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Database executor is saturated, " + pool.getQueue().size() + " tasks queued");
+                }) {
+            @Override
+            public void execute(Runnable command) {
+                long queuedAt = System.nanoTime();
+                super.execute(() -> {
+                    waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                    command.run();
+                });
+            }
+        };
+        new ExecutorServiceMetrics(executor, "endorsement.db", Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every EndorseController handler as endorsement.controller, tagged with the endpoint and the outcome, and
+ * every EndorsementRepository method as endorsement.repository, tagged with the method and the outcome.
+ * Percentile histograms for both are enabled in application.yml.
+ */
+@Component
+@Aspect
+public class MetricsAspect {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Around("execution(public * net.maritimeconnectivity.endorsement.controllers.EndorseController.*(..))")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("endorsement.controller", "endpoint", joinPoint);
+    }
+
+    @Around("execution(public * net.maritimeconnectivity.endorsement.repositories.EndorsementRepository+.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("endorsement.repository", "method", joinPoint);
+    }
+
+    private Object time(String name, String tag, ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            record(name, tag, joinPoint, start, "ERROR");
+            throw e;
+        }
+        if (result instanceof CompletionStage) {
+            // Handlers that run on the database executor are timed until their response is ready
+            return ((CompletionStage<?>) result).whenComplete((value, error) -> record(name, tag, joinPoint, start, error != null ? "ERROR" : outcome(value)));
+        }
+        record(name, tag, joinPoint, start, outcome(result));
+        return result;
+    }
+
+    private static String outcome(Object result) {
+        return result instanceof ResponseEntity ? ((ResponseEntity<?>) result).getStatusCode().series().name() : "SUCCESSFUL";
+    }
+
+    private void record(String name, String tag, ProceedingJoinPoint joinPoint, long start, String outcome) {
+        Timer.builder(name)
+                .tag(tag, joinPoint.getSignature().getName())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jpa.HibernateMetrics;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Metrics on top of the ones Spring Boot registers by itself, which already include the Hikari connection pool.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Publishes the Hibernate statistics, which are enabled with hibernate.generate_statistics in application.yml.
+     * This is not a MeterBinder bean, since the registry is created together with the data source, before the
+     * entity manager factory exists.
+     */
+    @Autowired
+    public void bindHibernateMetrics(MeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory) {
+        HibernateMetrics.monitor(meterRegistry, entityManagerFactory, "entityManagerFactory");
+        bindCacheRegionMetrics(meterRegistry, entityManagerFactory.unwrap(SessionFactory.class).getStatistics());
+    }
+
+    /**
+     * HibernateMetrics only has the totals of the second-level cache, this adds the requests and puts of each region.
+     * There are no regions when the second-level cache is disabled, see {@link SecondLevelCacheConfig}.
+     */
+    private static void bindCacheRegionMetrics(MeterRegistry meterRegistry, Statistics statistics) {
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+            FunctionCounter.builder("hibernate.second.level.cache.region.requests", regionStatistics, SecondLevelCacheStatistics::getHitCount)
+                    .tags("region", region, "result", "hit")
+                    .register(meterRegistry);
+            FunctionCounter.builder("hibernate.second.level.cache.region.requests", regionStatistics, SecondLevelCacheStatistics::getMissCount)
+                    .tags("region", region, "result", "miss")
+                    .register(meterRegistry);
+            FunctionCounter.builder("hibernate.second.level.cache.region.puts", regionStatistics, SecondLevelCacheStatistics::getPutCount)
+                    .tags("region", region)
+                    .register(meterRegistry);
+        }
+    }
+}
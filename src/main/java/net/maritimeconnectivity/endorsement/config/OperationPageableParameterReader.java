@@ -23,6 +23,7 @@ import com.fasterxml.classmate.TypeResolver;
 import com.google.common.base.Function;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.data.domain.Pageable;
@@ -43,6 +44,7 @@ import static com.google.common.collect.Lists.newArrayList;
 import static springfox.documentation.spi.schema.contexts.ModelContext.inputParam;
 
 @Component
+@ConditionalOnWebApplication
 @Order(Ordered.LOWEST_PRECEDENCE)
 public class OperationPageableParameterReader implements OperationBuilderPlugin {
     private final TypeNameExtractor nameExtractor;
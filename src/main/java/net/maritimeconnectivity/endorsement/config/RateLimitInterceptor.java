@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.utils.AccessControlUtil;
+import net.maritimeconnectivity.endorsement.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers calls to {@link RateLimited} handlers with 429 Too Many Requests when the org of the caller has used up its
+ * limit on that endpoint. Every org gets a {@link TokenBucket} per endpoint, sized by {@link RateLimitProperties}.
+ * The buckets are kept in a bounded cache, and a bucket that has not been used for long enough to be full again is
+ * dropped, so only the orgs that are currently calling take up memory.
+ * <p>
+ * Rejected calls are counted as endorsement.rate-limit.rejected, tagged with the endpoint.
+ */
+@Component
+@EnableConfigurationProperties(RateLimitProperties.class)
+@Slf4j
+public class RateLimitInterceptor extends HandlerInterceptorAdapter {
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, TokenBucket> buckets;
+
+    @PostConstruct
+    public void init() {
+        buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxBuckets())
+                .expireAfter(new Expiry<String, TokenBucket>() {
+                    @Override
+                    public long expireAfterCreate(String key, TokenBucket value, long currentTime) {
+                        return value.getRefillNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, TokenBucket value, long currentTime, long currentDuration) {
+                        return value.getRefillNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, TokenBucket value, long currentTime, long currentDuration) {
+                        return value.getRefillNanos();
+                    }
+                })
+                .build();
+        Gauge.builder("endorsement.rate-limit.buckets", buckets, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Handlers that run on the database executor are dispatched again once done, which is not another call
+        if (!properties.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        RateLimited rateLimited = ((HandlerMethod) handler).getMethodAnnotation(RateLimited.class);
+        // Calls without an org are not authenticated, and are refused by the security config
+        String orgMrn = rateLimited != null ? AccessControlUtil.currentOrgMrn() : null;
+        if (orgMrn == null) {
+            return true;
+        }
+        String endpoint = rateLimited.value();
+        String normalizedOrgMrn = orgMrn.toLowerCase(Locale.ROOT);
+        TokenBucket bucket = buckets.get(endpoint + " " + normalizedOrgMrn, key -> {
+            RateLimitProperties.Limit limit = properties.getLimit(normalizedOrgMrn, endpoint);
+            return limit != null ? new TokenBucket(limit.getPermitsPerSecond(), limit.getBurst(), System.nanoTime()) : null;
+        });
+        if (bucket == null) {
+            return true;
+        }
+        long waitNanos = bucket.tryAcquire(System.nanoTime());
+        if (waitNanos == 0) {
+            return true;
+        }
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        log.debug("Org {} is over its limit on {}, retry after {} seconds", orgMrn, endpoint, retryAfter);
+        meterRegistry.counter("endorsement.rate-limit.rejected", "endpoint", endpoint).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The per org limits of the {@link RateLimited} endpoints, see {@link RateLimitInterceptor}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("endorsement.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Maximum number of buckets kept, the least recently used ones are dropped first
+    private long maxBuckets = 10000;
+
+    // Limit of each org, by endpoint name. Endpoints without a limit are not limited.
+    private Map<String, Limit> endpoints = new HashMap<>();
+
+    // Limits that replace the endpoint limits for specific orgs, by org MRN and endpoint name
+    private Map<String, Map<String, Limit>> orgs = new HashMap<>();
+
+    /**
+     * @return the limit of the given org on the given endpoint, or null if it is not limited
+     */
+    public Limit getLimit(String orgMrn, String endpoint) {
+        for (Map.Entry<String, Map<String, Limit>> org : orgs.entrySet()) {
+            if (org.getKey().equalsIgnoreCase(orgMrn) && org.getValue().containsKey(endpoint)) {
+                return org.getValue().get(endpoint);
+            }
+        }
+        return endpoints.get(endpoint);
+    }
+
+    @Getter
+    @Setter
+    public static class Limit {
+        private double permitsPerSecond;
+        private int burst = 1;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the data source Spring Boot would create from spring.datasource with one that sends read-only transactions
+ * to the replicas configured under endorsement.datasource.replicas, see {@link ReplicaRoutingDataSource}. Only active
+ * when at least one replica is configured. The primary keeps the spring.datasource.hikari settings, and the replicas
+ * get read-only connection pools of the same size.
+ * <p>
+ * The primary and the replicas are not beans of their own, since Spring Boot expects a single data source. The lag
+ * of each replica is published as endorsement.datasource.replica.lag and whether it is used as
+ * endorsement.datasource.replica.healthy, both tagged with the name of the replica.
+ */
+@Configuration
+@ConditionalOnProperty("endorsement.datasource.replicas[0].url")
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class ReplicaDataSourceConfig implements DisposableBean {
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, ReplicaDataSourceProperties properties,
+                                 MeterRegistry meterRegistry, Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        List<ReplicaRoutingDataSource.Replica> replicas = new ArrayList<>();
+        for (ReplicaDataSourceProperties.Replica replicaProperties : properties.getReplicas()) {
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replicaProperties.getUrl())
+                    .username(replicaProperties.getUsername())
+                    .password(replicaProperties.getPassword())
+                    .driverClassName(replicaProperties.getDriverClassName())
+                    .build();
+            dataSource.setPoolName(name);
+            if (primary.getMaximumPoolSize() > 0) {
+                dataSource.setMaximumPoolSize(primary.getMaximumPoolSize());
+            }
+            dataSource.setReadOnly(true);
+            dataSource.setMetricRegistry(meterRegistry);
+            ReplicaRoutingDataSource.Replica replica = new ReplicaRoutingDataSource.Replica(name, dataSource);
+            Gauge.builder("endorsement.datasource.replica.lag", replica, ReplicaRoutingDataSource.Replica::getLagSeconds)
+                    .tag("replica", name).baseUnit("seconds").register(meterRegistry);
+            Gauge.builder("endorsement.datasource.replica.healthy", replica, r -> r.isHealthy() ? 1 : 0)
+                    .tag("replica", name).register(meterRegistry);
+            replicas.add(replica);
+        }
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, properties.getLagQuery(), properties.getMaxLagSeconds());
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.checkReplicas();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Scheduled(fixedDelayString = "${endorsement.datasource.check-interval-ms:5000}")
+    public void checkReplicas() {
+        if (routingDataSource != null) {
+            routingDataSource.checkReplicas();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+}
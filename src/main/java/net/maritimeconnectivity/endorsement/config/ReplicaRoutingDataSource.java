@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routes the connections of read-only transactions to the read replicas, round robin, and all other connections to
+ * the primary. Replicas whose lag is above the limit, or that could not be checked, are skipped until the next check
+ * finds them healthy again, and a replica that fails to hand out a connection is skipped right away. When no replica
+ * is usable the read-only transactions go to the primary as well.
+ * <p>
+ * The read-only flag of a transaction is only known once the transaction has started, so this data source must be
+ * used through a LazyConnectionDataSourceProxy, which fetches the connection when the first statement is run.
+ * <p>
+ * Reads that must see the latest writes, e.g. right after the data they read has been changed, can be sent to the
+ * primary with {@link #onPrimary(Supplier)}.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String LAG_COLUMN = "Seconds_Behind_Master";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Map<DataSource, Replica> replicasByDataSource = new HashMap<>();
+    private final String lagQuery;
+    private final int maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = ThreadLocal.withInitial(() -> false);
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, String lagQuery, int maxLagSeconds) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Replica replica : replicas) {
+            targets.put(replica.getName(), replica.getDataSource());
+            replicasByDataSource.put(replica.getDataSource(), replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Runs the action with the connections of read-only transactions taken from the primary, when the replicas may
+     * not have the data it reads yet. Only transactions that fetch their connection within the action are affected.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(true);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_ONLY.set(previous);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !PRIMARY_ONLY.get()) {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                if (replica.isHealthy()) {
+                    return replica.getName();
+                }
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            Replica replica = replicasByDataSource.get(target);
+            if (replica == null) {
+                throw e;
+            }
+            log.warn("Could not connect to replica {}, using the primary: {}", replica.getName(), e.getMessage());
+            replica.setHealthy(false);
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Measures the lag of every replica with the lag query, and marks the replicas healthy or not.
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            Double lag;
+            try (Connection connection = replica.getDataSource().getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                lag = resultSet.next() ? readLag(resultSet) : null;
+            } catch (SQLException e) {
+                log.debug("Could not check replica {}: {}", replica.getName(), e.getMessage());
+                lag = null;
+            }
+            // Without a lag, e.g. when replication has stopped, the replica is not used
+            boolean healthy = lag != null && lag <= maxLagSeconds;
+            if (healthy != replica.isHealthy()) {
+                log.info("Replica {} is now {}, lag {} seconds", replica.getName(), healthy ? "used" : "skipped", lag);
+            }
+            replica.setLagSeconds(lag != null ? lag : Double.NaN);
+            replica.setHealthy(healthy);
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Closes the connection pools of the primary and the replicas.
+     */
+    public void close() {
+        close(primary);
+        for (Replica replica : replicas) {
+            close(replica.getDataSource());
+        }
+    }
+
+    private static void close(DataSource dataSource) {
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException e) {
+                log.warn("Could not close data source", e);
+            }
+        }
+    }
+
+    private static Double readLag(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int column = 1;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (LAG_COLUMN.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                column = i;
+            }
+        }
+        Object lag = resultSet.getObject(column);
+        return lag instanceof Number ? ((Number) lag).doubleValue() : null;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        @Setter(AccessLevel.PACKAGE)
+        private volatile boolean healthy;
+        @Setter(AccessLevel.PACKAGE)
+        private volatile double lagSeconds = Double.NaN;
+    }
+}
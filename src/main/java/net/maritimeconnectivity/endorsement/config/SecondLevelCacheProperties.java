@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Hibernate second-level and query cache regions, see {@link SecondLevelCacheConfig}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("endorsement.second-level-cache")
+public class SecondLevelCacheProperties {
+
+    private boolean enabled;
+
+    // Settings of the regions that are not listed in regions
+    private Region defaults = new Region();
+
+    // Settings by region name
+    private Map<String, Region> regions = new HashMap<>();
+
+    public Region getRegion(String name) {
+        return regions.getOrDefault(name, defaults);
+    }
+
+    @Getter
+    @Setter
+    public static class Region {
+
+        private long maximumSize = 10000;
+
+        // 0 for entries that only leave the region when it is full or they are invalidated
+        private long expireAfterWriteSeconds = 600;
+    }
+}
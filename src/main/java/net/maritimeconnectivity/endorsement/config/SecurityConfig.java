@@ -21,6 +21,7 @@ import org.keycloak.adapters.springsecurity.config.KeycloakWebSecurityConfigurer
 import org.keycloak.adapters.springsecurity.filter.KeycloakAuthenticationProcessingFilter;
 import org.keycloak.adapters.springsecurity.filter.KeycloakPreAuthActionsFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -45,6 +46,7 @@ public class SecurityConfig {
     }
 
     @Configuration
+    @ConditionalOnWebApplication
     @Order(1)
     public static class OIDCWebSecurityConfigurationAdapter extends KeycloakWebSecurityConfigurerAdapter
     {
@@ -75,9 +77,14 @@ public class SecurityConfig {
                 .authorizeRequests()
                     // Some general filters for access, more specific ones are set at each method
                     .antMatchers(HttpMethod.POST, "/oidc/endorsements").authenticated()
+                    .antMatchers(HttpMethod.POST, "/oidc/endorsements/batch").authenticated()
+                    .antMatchers(HttpMethod.POST, "/oidc/endorsements/lookup").authenticated()
+                    .antMatchers(HttpMethod.POST, "/oidc/endorsements/import").authenticated()
                     .antMatchers(HttpMethod.GET, "/oidc/endorsements/**").authenticated()
                     .antMatchers(HttpMethod.GET, "/oidc/endorsements-by/**").authenticated()
+                    .antMatchers(HttpMethod.GET, "/oidc/endorsement-stats/**").authenticated()
                     .antMatchers(HttpMethod.DELETE, "/oidc/endorsements/**").authenticated()
+                    .antMatchers(HttpMethod.DELETE, "/oidc/endorsements-by/**").authenticated()
             ;
         }
 
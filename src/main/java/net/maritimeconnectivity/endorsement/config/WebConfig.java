@@ -16,20 +16,32 @@
 
 package net.maritimeconnectivity.endorsement.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 import org.springframework.web.util.UrlPathHelper;
 
 @Configuration
+@ConditionalOnWebApplication
 @EnableWebMvc
 @EnableSpringDataWebSupport
 public class WebConfig extends WebMvcConfigurationSupport {
 
+    @Value("${endorsement.db-executor.request-timeout-ms:30000}")
+    private long asyncRequestTimeoutMillis;
+
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
     @Override
     @Bean
     public RequestMappingHandlerMapping requestMappingHandlerMapping() {
@@ -38,6 +50,17 @@ public class WebConfig extends WebMvcConfigurationSupport {
         return hm;
     }
 
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Handlers that wait this long for the database executor are answered with 503 Service Unavailable
+        configurer.setDefaultTimeout(asyncRequestTimeoutMillis);
+    }
+
+    @Override
+    protected void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor);
+    }
+
     @Override
     public void configurePathMatch(PathMatchConfigurer configurer) {
         // Allow encoded "/" (%2F) in urls without actually interpreting it immediately as a path separator
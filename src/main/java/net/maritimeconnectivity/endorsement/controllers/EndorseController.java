@@ -15,37 +15,124 @@
  */
 package net.maritimeconnectivity.endorsement.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.config.DatabaseExecutorConfig;
+import net.maritimeconnectivity.endorsement.config.RateLimited;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementBatchResult;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementDelta;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementDeleteResult;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportResult;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementList;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.OrgStats;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.data.ServiceVersionStats;
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.services.EndorsementEventFeed;
+import net.maritimeconnectivity.endorsement.services.EndorsementImporter;
 import net.maritimeconnectivity.endorsement.services.EndorsementService;
+import net.maritimeconnectivity.endorsement.utils.AccessControlUtil;
+import net.maritimeconnectivity.endorsement.utils.DeltaCursor;
+import net.maritimeconnectivity.endorsement.utils.KeysetCursor;
 import net.maritimeconnectivity.endorsement.validators.EndorsementValidator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.SortDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.ServletRequestDataBinder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping(value="oidc")
+@Slf4j
 public class EndorseController {
 
+    // Maximum number of service versions that can be looked up in one request
+    private static final int MAX_LOOKUP_SIZE = 100;
+
+    // Maximum depth of an endorsement hierarchy, specification -> design -> instance only needs 2
+    private static final int MAX_HIERARCHY_DEPTH = 5;
+
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson;charset=UTF-8";
+
+    // Maximum number of endorsements that can be created in one batch, larger batches get 413
+    @Value("${endorsement.batch.max-size:500}")
+    private int maxBatchSize;
+
     @Autowired
     private EndorsementValidator endorsementValidator;
 
     @Autowired
     private EndorsementService endorsementService;
 
+    @Autowired
+    private EndorsementImporter endorsementImporter;
+
+    @Autowired
+    private EndorsementEventFeed endorsementEventFeed;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Null when endorsement.db-executor.enabled is false
+    private Executor databaseExecutor;
+
+    // Conditional requests read the version and the content in one of these
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Autowired(required = false)
+    public void setDatabaseExecutor(@Qualifier(DatabaseExecutorConfig.DATABASE_EXECUTOR) Executor databaseExecutor) {
+        this.databaseExecutor = databaseExecutor;
+    }
+
     @InitBinder("endorsement")
     protected void initBinder(final ServletRequestDataBinder binder) {
         binder.addValidators(endorsementValidator);
@@ -59,15 +146,70 @@ public class EndorseController {
             produces = "application/json;charset=UTF-8")
     @ResponseBody
     @PreAuthorize("@accessControlUtil.hasAccessToOrg(#input.getOrgMrn())")
-    public ResponseEntity<Endorsement> createEndorsement(HttpServletRequest request, @Validated @RequestBody Endorsement input) {
-        Endorsement endorsement = this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(input.getOrgMrn(), input.getServiceMrn(), input.getServiceVersion());
-        if (endorsement != null) {
-            endorsement.setUserMrn(input.getUserMrn());
-            endorsementService.saveEndorsement(endorsement);
-        } else {
-            endorsement = endorsementService.saveEndorsement(input);
+    @RateLimited("create")
+    public CompletableFuture<ResponseEntity<Endorsement>> createEndorsement(HttpServletRequest request, @Validated @RequestBody Endorsement input) {
+        return onDatabaseExecutor(() -> {
+            Endorsement endorsement = this.endorsementService.upsertEndorsement(input);
+            return new ResponseEntity<>(endorsement, HttpStatus.OK);
+        });
+    }
+
+    @RequestMapping(
+            value = "/endorsements/batch",
+            method = RequestMethod.POST,
+            consumes = "application/json;charset=UTF-8",
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    @RateLimited("batch")
+    public CompletableFuture<ResponseEntity<List<EndorsementBatchResult>>> createEndorsements(HttpServletRequest request, @RequestBody List<Endorsement> input) {
+        if (input.size() > maxBatchSize) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE));
         }
-        return new ResponseEntity<>(endorsement, HttpStatus.OK);
+        List<EndorsementBatchResult> results = new ArrayList<>(input.size());
+        List<Endorsement> accepted = new ArrayList<>(input.size());
+        List<EndorsementBatchResult> acceptedResults = new ArrayList<>(input.size());
+        for (int i = 0; i < input.size(); i++) {
+            Endorsement endorsement = input.get(i);
+            EndorsementBatchResult result = new EndorsementBatchResult();
+            result.setIndex(i);
+            results.add(result);
+            if (endorsement == null) {
+                result.setErrors(Collections.singletonList("Endorsement is missing"));
+                continue;
+            }
+            result.setServiceMrn(endorsement.getServiceMrn());
+            result.setServiceVersion(endorsement.getServiceVersion());
+            result.setOrgMrn(endorsement.getOrgMrn());
+
+            Errors errors = new BeanPropertyBindingResult(endorsement, "endorsement");
+            endorsementValidator.validate(endorsement, errors);
+            if (errors.hasErrors()) {
+                List<String> messages = new ArrayList<>();
+                for (FieldError error : errors.getFieldErrors()) {
+                    messages.add(error.getField() + ": " + error.getDefaultMessage());
+                }
+                result.setErrors(messages);
+            } else if (!AccessControlUtil.hasAccessToOrg(endorsement.getOrgMrn())) {
+                result.setErrors(Collections.singletonList("Access denied to org " + endorsement.getOrgMrn()));
+            } else {
+                accepted.add(endorsement);
+                acceptedResults.add(result);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(results, HttpStatus.OK));
+        }
+        return onDatabaseExecutor(() -> {
+            try {
+                endorsementService.upsertEndorsements(accepted);
+                acceptedResults.forEach(result -> result.setSuccess(true));
+            } catch (DataAccessException e) {
+                log.error("Could not store endorsement batch", e);
+                List<String> messages = Collections.singletonList("Could not store endorsements: " + e.getMostSpecificCause().getMessage());
+                acceptedResults.forEach(result -> result.setErrors(messages));
+            }
+            return new ResponseEntity<>(results, HttpStatus.OK);
+        });
     }
 
     @RequestMapping(
@@ -75,8 +217,114 @@ public class EndorseController {
             method = RequestMethod.GET,
             produces = "application/json;charset=UTF-8")
     @ResponseBody
-    public Page<Endorsement> getEndorsementsByServiceMrn(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, Pageable pageable) {
-        return endorsementService.listByServiceMrnAndServiceVersion(serviceMrn, serviceVersion, pageable);
+    public CompletableFuture<ResponseEntity<?>> getEndorsementsByServiceMrn(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, @RequestParam(required = false) String cursor, @SortDefault(sort = {"createdAt", "id"}) Pageable pageable) {
+        return onDatabaseExecutor(() -> ifModified(request, () -> endorsementService.getVersionByServiceMrnAndServiceVersion(serviceMrn, serviceVersion), () -> {
+            if (cursor != null) {
+                KeysetCursor keysetCursor = decodeCursor(cursor);
+                if (keysetCursor == null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                return new ResponseEntity<>(endorsementService.listByServiceMrnAndServiceVersion(serviceMrn, serviceVersion, keysetCursor, pageable.getPageSize()), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(endorsementService.listByServiceMrnAndServiceVersion(serviceMrn, serviceVersion, pageable), HttpStatus.OK);
+        }));
+    }
+
+    @RequestMapping(
+            value = "/endorsements/lookup",
+            method = RequestMethod.POST,
+            consumes = "application/json;charset=UTF-8",
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<List<EndorsementList>>> getEndorsementsByServices(HttpServletRequest request, @RequestBody List<ServiceReference> services) {
+        if (services.size() > MAX_LOOKUP_SIZE || services.contains(null)) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return onDatabaseExecutor(() -> new ResponseEntity<>(endorsementService.listByServiceReferences(services), HttpStatus.OK));
+    }
+
+    /**
+     * Imports endorsements from newline delimited JSON, one endorsement per line, see {@link EndorsementImporter}.
+     * Endorsements for orgs the caller does not belong to are reported as failed lines.
+     */
+    @RequestMapping(
+            value = "/endorsements/import",
+            method = RequestMethod.POST,
+            consumes = NDJSON_CONTENT_TYPE,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    @RateLimited("import")
+    public ResponseEntity<EndorsementImportResult> importEndorsements(HttpServletRequest request) throws IOException {
+        EndorsementImportResult result = endorsementImporter.importEndorsements(request.getInputStream(),
+                endorsement -> AccessControlUtil.hasAccessToOrg(endorsement.getOrgMrn()));
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Writes the matching endorsements as newline delimited JSON, one endorsement per line, straight from a
+     * database cursor. All filters are optional.
+     */
+    @RequestMapping(
+            value = "/endorsements/export",
+            method = RequestMethod.GET,
+            produces = NDJSON_CONTENT_TYPE)
+    public void exportEndorsements(HttpServletResponse response, @RequestParam(required = false) String orgMrn, @RequestParam(required = false) String serviceMrn,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date updatedSince) throws IOException {
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        ObjectWriter writer = objectMapper.writerFor(Endorsement.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            long count = endorsementService.exportEndorsements(orgMrn, serviceMrn, updatedSince, endorsement -> {
+                try {
+                    writer.writeValue(generator, endorsement);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.debug("Exported {} endorsements", count);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the endorsements created, updated or deleted at or after the given time, a page at a time. Further pages
+     * are fetched by passing the nextCursor of the page as cursor, and the last page has the watermark to pass as since
+     * on the next sync. Answers 410 Gone when the time is older than the retention of deletions, the client then has
+     * to start over with a full export.
+     */
+    @RequestMapping(
+            value = "/endorsements/changes",
+            method = RequestMethod.GET,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<EndorsementDelta>> getEndorsementChanges(HttpServletRequest request, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date since,
+                                                                               @RequestParam(required = false) String cursor) {
+        DeltaCursor position = cursor != null ? decodeDeltaCursor(cursor) : since != null ? DeltaCursor.since(since) : null;
+        if (position == null) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return onDatabaseExecutor(() -> {
+            EndorsementDelta delta = endorsementService.getChangesSince(position);
+            if (delta == null) {
+                return new ResponseEntity<>(HttpStatus.GONE);
+            }
+            return new ResponseEntity<>(delta, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Pushes the changes of the matching endorsements as Server-Sent Events, see {@link EndorsementEventFeed}. A client
+     * that reconnects with the Last-Event-ID header first gets the changes it missed. All filters are optional. When
+     * the feed already has its maximum number of subscribers the request is answered with 503.
+     */
+    @RequestMapping(
+            value = "/endorsements/events",
+            method = RequestMethod.GET,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEndorsementEvents(@RequestParam(required = false) String serviceMrn, @RequestParam(required = false) String orgMrn,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return endorsementEventFeed.subscribe(serviceMrn, orgMrn, lastEventId);
     }
 
     @RequestMapping(
@@ -84,8 +332,17 @@ public class EndorseController {
             method = RequestMethod.GET,
             produces = "application/json;charset=UTF-8")
     @ResponseBody
-    public Page<Endorsement> getEndorsementsByOrgMrn(HttpServletRequest request, @PathVariable String serviceLevel, @PathVariable String orgMrn, Pageable pageable) {
-        return endorsementService.listByOrgMrnAndServiceLevel(orgMrn, serviceLevel, pageable);
+    public CompletableFuture<ResponseEntity<?>> getEndorsementsByOrgMrn(HttpServletRequest request, @PathVariable String serviceLevel, @PathVariable String orgMrn, @RequestParam(required = false) String cursor, @SortDefault(sort = {"createdAt", "id"}) Pageable pageable) {
+        return onDatabaseExecutor(() -> ifModified(request, () -> endorsementService.getVersionByOrgMrnAndServiceLevel(orgMrn, serviceLevel), () -> {
+            if (cursor != null) {
+                KeysetCursor keysetCursor = decodeCursor(cursor);
+                if (keysetCursor == null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                return new ResponseEntity<>(endorsementService.listByOrgMrnAndServiceLevel(orgMrn, serviceLevel, keysetCursor, pageable.getPageSize()), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(endorsementService.listByOrgMrnAndServiceLevel(orgMrn, serviceLevel, pageable), HttpStatus.OK);
+        }));
     }
 
     @RequestMapping(
@@ -93,26 +350,71 @@ public class EndorseController {
             method = RequestMethod.DELETE)
     @ResponseBody
     @PreAuthorize("@accessControlUtil.hasAccessToOrg(#orgMrn)")
-    public ResponseEntity<?> deleteEndorsement(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, @PathVariable String orgMrn) {
-        Endorsement endorsement = this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
-        if (endorsement == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    @RateLimited("delete")
+    public CompletableFuture<ResponseEntity<?>> deleteEndorsement(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, @PathVariable String orgMrn) {
+        return onDatabaseExecutor(() -> {
+            if (!endorsementService.deleteEndorsement(orgMrn, serviceMrn, serviceVersion)) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Deletes the endorsements of the service version made by the org of the caller.
+     */
+    @RequestMapping(
+            value = "/endorsements/{serviceMrn}/{serviceVersion}",
+            method = RequestMethod.DELETE,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    @RateLimited("bulk-delete")
+    public CompletableFuture<ResponseEntity<?>> deleteEndorsementsOfService(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion) {
+        String orgMrn = AccessControlUtil.currentOrgMrn();
+        if (orgMrn == null) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.FORBIDDEN));
         }
-        endorsementService.deleteEndorsement(endorsement);
-        return new ResponseEntity<>(HttpStatus.OK);
+        return onDatabaseExecutor(() -> new ResponseEntity<>(deleteResult(endorsementService.deleteByServiceMrnAndServiceVersion(serviceMrn, serviceVersion, orgMrn)), HttpStatus.OK));
+    }
+
+    /**
+     * Deletes all endorsements made by the org.
+     */
+    @RequestMapping(
+            value = "/endorsements-by/{orgMrn}",
+            method = RequestMethod.DELETE,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    @PreAuthorize("@accessControlUtil.hasAccessToOrg(#orgMrn)")
+    @RateLimited("bulk-delete")
+    public CompletableFuture<ResponseEntity<?>> deleteEndorsementsByOrgMrn(HttpServletRequest request, @PathVariable String orgMrn) {
+        return onDatabaseExecutor(() -> new ResponseEntity<>(deleteResult(endorsementService.deleteByOrgMrn(orgMrn)), HttpStatus.OK));
     }
 
+    /**
+     * Gets a single endorsement. Its version is read first, and the endorsement is only loaded when the client does
+     * not already have that version.
+     */
     @RequestMapping(
             value = "/endorsement-by/{serviceMrn}/{serviceVersion}/{orgMrn}",
             method = RequestMethod.GET,
             produces = "application/json;charset=UTF-8")
     @ResponseBody
-    public ResponseEntity<?> getEndorsement(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, @PathVariable String orgMrn) {
-        Endorsement endorsement = this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
-        if (endorsement == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        return new ResponseEntity<>(endorsement, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<?>> getEndorsement(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion, @PathVariable String orgMrn) {
+        return onDatabaseExecutor(() -> readOnlyTransaction.execute(status -> {
+            EndorsementVersion version = this.endorsementService.getVersionByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
+            if (version.getCount() == 0) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return ifModified(request, version, () -> {
+                Endorsement endorsement = this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
+                if (endorsement == null) {
+                    // Deleted since its version was read
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                }
+                return new ResponseEntity<>(endorsement, HttpStatus.OK);
+            });
+        }));
     }
 
     @RequestMapping(
@@ -120,8 +422,17 @@ public class EndorseController {
             method = RequestMethod.GET,
             produces = "application/json;charset=UTF-8")
     @ResponseBody
-    public Page<Endorsement> getEndorsedByParentMrn(HttpServletRequest request, @PathVariable String parentMrn, @PathVariable String parentVersion, Pageable pageable) {
-        return endorsementService.listByParentMrnAndParentVersion(parentMrn, parentVersion, pageable);
+    public CompletableFuture<ResponseEntity<?>> getEndorsedByParentMrn(HttpServletRequest request, @PathVariable String parentMrn, @PathVariable String parentVersion, @RequestParam(required = false) String cursor, @SortDefault(sort = {"createdAt", "id"}) Pageable pageable) {
+        return onDatabaseExecutor(() -> ifModified(request, () -> endorsementService.getVersionByParentMrnAndParentVersion(parentMrn, parentVersion), () -> {
+            if (cursor != null) {
+                KeysetCursor keysetCursor = decodeCursor(cursor);
+                if (keysetCursor == null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                return new ResponseEntity<>(endorsementService.listByParentMrnAndParentVersion(parentMrn, parentVersion, keysetCursor, pageable.getPageSize()), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(endorsementService.listByParentMrnAndParentVersion(parentMrn, parentVersion, pageable), HttpStatus.OK);
+        }));
     }
 
     @RequestMapping(
@@ -129,8 +440,143 @@ public class EndorseController {
             method = RequestMethod.GET,
             produces = "application/json;charset=UTF-8")
     @ResponseBody
-    public Page<Endorsement> getEndorsedByParentMrnAndOrgMrn(HttpServletRequest request, @PathVariable String parentMrn, @PathVariable String parentVersion, @PathVariable String orgMrn, Pageable pageable) {
-        return endorsementService.listByParentMrnAndOrgMrn(parentMrn, parentVersion, orgMrn, pageable);
+    public CompletableFuture<ResponseEntity<?>> getEndorsedByParentMrnAndOrgMrn(HttpServletRequest request, @PathVariable String parentMrn, @PathVariable String parentVersion, @PathVariable String orgMrn, @RequestParam(required = false) String cursor, @SortDefault(sort = {"createdAt", "id"}) Pageable pageable) {
+        return onDatabaseExecutor(() -> ifModified(request, () -> endorsementService.getVersionByParentMrnAndOrgMrn(parentMrn, parentVersion, orgMrn), () -> {
+            if (cursor != null) {
+                KeysetCursor keysetCursor = decodeCursor(cursor);
+                if (keysetCursor == null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                return new ResponseEntity<>(endorsementService.listByParentMrnAndOrgMrn(parentMrn, parentVersion, orgMrn, keysetCursor, pageable.getPageSize()), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(endorsementService.listByParentMrnAndOrgMrn(parentMrn, parentVersion, orgMrn, pageable), HttpStatus.OK);
+        }));
+    }
+
+    /**
+     * Returns the number of endorsements of the service version, read from a counter rather than counted.
+     */
+    @RequestMapping(
+            value = "/endorsement-stats/{serviceMrn}/{serviceVersion}",
+            method = RequestMethod.GET,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<ServiceVersionStats>> getServiceVersionStats(HttpServletRequest request, @PathVariable String serviceMrn, @PathVariable String serviceVersion) {
+        return onDatabaseExecutor(() -> new ResponseEntity<>(endorsementService.getServiceVersionStats(serviceMrn, serviceVersion), HttpStatus.OK));
+    }
+
+    /**
+     * Returns the number of endorsements made by the org per service level, read from counters rather than counted.
+     */
+    @RequestMapping(
+            value = "/endorsement-stats/{orgMrn}",
+            method = RequestMethod.GET,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<OrgStats>> getOrgStats(HttpServletRequest request, @PathVariable String orgMrn) {
+        return onDatabaseExecutor(() -> new ResponseEntity<>(endorsementService.getOrgStats(orgMrn), HttpStatus.OK));
+    }
+
+    /**
+     * Returns the tree of service versions endorsed under the given parent, down to the given depth. With an org
+     * MRN only the endorsements made by that org are followed.
+     */
+    @RequestMapping(
+            value = "/endorsed-hierarchy/{parentMrn}/{parentVersion}",
+            method = RequestMethod.GET,
+            produces = "application/json;charset=UTF-8")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<?>> getEndorsedHierarchy(HttpServletRequest request, @PathVariable String parentMrn, @PathVariable String parentVersion,
+                                                                     @RequestParam(required = false) String orgMrn, @RequestParam(defaultValue = "" + MAX_HIERARCHY_DEPTH) int depth) {
+        if (depth < 1 || depth > MAX_HIERARCHY_DEPTH) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return onDatabaseExecutor(() -> ifModified(request, () -> endorsementService.getHierarchyVersion(parentMrn, parentVersion, orgMrn, depth),
+                () -> new ResponseEntity<>(endorsementService.getHierarchy(parentMrn, parentVersion, orgMrn, depth), HttpStatus.OK)));
+    }
+
+    /**
+     * Answers the requests that did not fit in the queue of the database executor, see {@link DatabaseExecutorConfig},
+     * and the event subscriptions beyond the cap of the {@link EndorsementEventFeed}.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    protected ResponseEntity<?> handleRejectedExecution(RejectedExecutionException e) {
+        log.warn(e.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Answers with 304 Not Modified when the If-None-Match or If-Modified-Since header of the request matches the
+     * version given by the first supplier, without calling the loader. Otherwise the response of the loader gets the
+     * ETag and Last-Modified headers of the version. Both run in the same read-only transaction, and the version is
+     * read first, so a response is never tagged with a version newer than its content.
+     */
+    private ResponseEntity<?> ifModified(HttpServletRequest request, Supplier<EndorsementVersion> version, Supplier<ResponseEntity<?>> loader) {
+        return readOnlyTransaction.execute(status -> ifModified(request, version.get(), loader));
+    }
+
+    private ResponseEntity<?> ifModified(HttpServletRequest request, EndorsementVersion version, Supplier<ResponseEntity<?>> loader) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(version.getETag());
+        if (version.getLastModified() >= 0) {
+            headers.setLastModified(version.getLastModified());
+        }
+        if (new ServletWebRequest(request).checkNotModified(version.getETag(), version.getLastModified())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        ResponseEntity<?> response = loader.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    /**
+     * Runs the given handler body on the database executor, or right away on the request thread if the executor is
+     * disabled. Throws RejectedExecutionException when the executor is saturated.
+     */
+    private <T> CompletableFuture<T> onDatabaseExecutor(Supplier<T> handler) {
+        if (databaseExecutor == null) {
+            return CompletableFuture.completedFuture(handler.get());
+        }
+        return CompletableFuture.supplyAsync(handler, databaseExecutor);
+    }
+
+    /**
+     * Decodes the continuation token given by a client that uses cursor paging. An empty token starts from the
+     * beginning.
+     *
+     * @return the cursor, or null if the token is not valid
+     */
+    private KeysetCursor decodeCursor(String cursor) {
+        try {
+            return KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid cursor: " + cursor);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the continuation token of a delta sync.
+     *
+     * @return the cursor, or null if the token is not valid
+     */
+    private DeltaCursor decodeDeltaCursor(String cursor) {
+        try {
+            return DeltaCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid cursor: " + cursor);
+            return null;
+        }
+    }
+
+    private static EndorsementDeleteResult deleteResult(int deleted) {
+        EndorsementDeleteResult result = new EndorsementDeleteResult();
+        result.setDeleted(deleted);
+        return result;
     }
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.model.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.maritimeconnectivity.endorsement.model.JsonSerializable;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A page of the endorsements created or updated and the endorsements deleted since a watermark. A deleted endorsement
+ * may have been created again afterwards, so clients should apply the deletions before the endorsements. When there
+ * are more changes nextCursor is set and continues with them, and the watermark is the time of the last change in the
+ * page. Otherwise nextCursor is left out, and the watermark is the one to pass for the next delta.
+ */
+@Getter
+@Setter
+public class EndorsementDelta implements JsonSerializable {
+
+    private List<Endorsement> endorsements;
+    private List<EndorsementTombstone> deleted;
+    private Date watermark;
+    private String nextCursor;
+}
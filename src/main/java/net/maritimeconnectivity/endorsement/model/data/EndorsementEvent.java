@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.model.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.maritimeconnectivity.endorsement.model.JsonSerializable;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+
+/**
+ * A change of an endorsement as pushed to the subscribers of the change feed. The id is the start time of the service
+ * followed by a sequence number, which increases by one for every change made since then. The endorsement of a
+ * DELETED event only has its org MRN, service MRN and service version set.
+ */
+@Getter
+@Setter
+public class EndorsementEvent implements JsonSerializable {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private String id;
+    private Type type;
+    private Endorsement endorsement;
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.model.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.maritimeconnectivity.endorsement.model.JsonSerializable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of an NDJSON import. Only the first failures are listed, but all of them are counted.
+ */
+@Getter
+@Setter
+public class EndorsementImportResult implements JsonSerializable {
+
+    private long imported;
+    private long failed;
+    private List<EndorsementImportFailure> failures = new ArrayList<>();
+}
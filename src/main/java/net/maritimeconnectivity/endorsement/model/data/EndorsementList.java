@@ -28,5 +28,6 @@ import java.util.List;
 public class EndorsementList implements JsonSerializable {
 
     private String serviceMrn;
+    private String serviceVersion;
     private List<Endorsement> endorsements;
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.model.data;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.maritimeconnectivity.endorsement.model.JsonSerializable;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A service version in an endorsement hierarchy, with its endorsements and the service versions that have been
+ * endorsed with it as parent.
+ */
+@Getter
+@Setter
+public class EndorsementNode implements JsonSerializable {
+
+    private String serviceMrn;
+    private String serviceVersion;
+    private String serviceLevel;
+    private List<Endorsement> endorsements = new ArrayList<>();
+    private List<EndorsementNode> children = new ArrayList<>();
+}
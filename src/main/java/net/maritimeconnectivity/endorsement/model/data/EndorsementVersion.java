@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.model.data;
+
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * The version of a single endorsement or of a listing of endorsements: the number of endorsements and the last time
+ * one of them was updated. Creating, updating or deleting an endorsement changes at least one of the two, so the
+ * version can be used as the validator of conditional requests without loading the endorsements themselves.
+ */
+@Getter
+public class EndorsementVersion {
+
+    private final long count;
+    private final Date lastUpdated;
+
+    public EndorsementVersion(long count, Date lastUpdated) {
+        this.count = count;
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getETag() {
+        return "\"" + count + "-" + (lastUpdated != null ? lastUpdated.getTime() : 0) + "\"";
+    }
+
+    /**
+     * @return the last update in milliseconds since the epoch, or -1 if there are no endorsements
+     */
+    public long getLastModified() {
+        return lastUpdated != null ? lastUpdated.getTime() : -1;
+    }
+}
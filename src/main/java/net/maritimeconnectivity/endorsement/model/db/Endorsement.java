@@ -23,21 +23,45 @@ import lombok.Setter;
 import lombok.ToString;
 import net.maritimeconnectivity.endorsement.validators.InPredefinedList;
 import net.maritimeconnectivity.endorsement.validators.MRN;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 import javax.validation.constraints.NotBlank;
+import java.util.Date;
 
 @EqualsAndHashCode(exclude={"id", "createdAt", "updatedAt"})
 @ToString
 @Entity
 @Table(name="endorsements")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "endorsement-entities")
 public class Endorsement extends TimestampModel {
 
     public Endorsement() {
     }
 
+    /**
+     * Used by the constructor expressions of the listing queries in EndorsementRepository.
+     */
+    public Endorsement(Long id, String serviceMrn, String serviceVersion, String orgMrn, String orgName, String userMrn,
+                       String parentMrn, String parentVersion, String serviceLevel, Date createdAt, Date updatedAt) {
+        this.id = id;
+        this.serviceMrn = serviceMrn;
+        this.serviceVersion = serviceVersion;
+        this.orgMrn = orgMrn;
+        this.orgName = orgName;
+        this.userMrn = userMrn;
+        this.parentMrn = parentMrn;
+        this.parentVersion = parentVersion;
+        this.serviceLevel = serviceLevel;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
     @Getter
     @Setter
     @MRN
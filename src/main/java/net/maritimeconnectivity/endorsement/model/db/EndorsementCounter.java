@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.model.db;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * The number of endorsements of a service version, or made by an org at a service level. The counters are adjusted
+ * in the transaction of every write to the endorsements, and rebuilt from them by the
+ * {@link net.maritimeconnectivity.endorsement.services.EndorsementCounterReconciler}.
+ */
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "endorsement_counters")
+@IdClass(EndorsementCounter.Key.class)
+public class EndorsementCounter {
+
+    public enum Type {
+        /** Keyed by service MRN and service version */
+        SERVICE_VERSION,
+        /** Keyed by org MRN and service level */
+        ORG_LEVEL
+    }
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "counter_type")
+    private Type counterType;
+
+    @Id
+    @Column(name = "mrn")
+    private String mrn;
+
+    @Id
+    @Column(name = "qualifier")
+    private String qualifier;
+
+    @Column(name = "endorsements", nullable = false)
+    private long endorsements;
+
+    @Getter
+    @Setter
+    @ToString
+    @EqualsAndHashCode
+    public static class Key implements Serializable, Comparable<Key> {
+
+        private static final Comparator<Key> ORDER = Comparator.comparing(Key::getCounterType)
+                .thenComparing(Key::getMrn)
+                .thenComparing(Key::getQualifier);
+
+        private Type counterType;
+        private String mrn;
+        private String qualifier;
+
+        public Key() {
+        }
+
+        public Key(Type counterType, String mrn, String qualifier) {
+            this.counterType = counterType;
+            this.mrn = mrn;
+            this.qualifier = qualifier;
+        }
+
+        public static Key serviceVersion(Endorsement endorsement) {
+            return new Key(Type.SERVICE_VERSION, endorsement.getServiceMrn(), endorsement.getServiceVersion());
+        }
+
+        public static Key orgLevel(Endorsement endorsement) {
+            return new Key(Type.ORG_LEVEL, endorsement.getOrgMrn(), endorsement.getServiceLevel());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.model.db;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import net.maritimeconnectivity.endorsement.model.JsonSerializable;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Date;
+
+/**
+ * Records that an endorsement has been deleted, so that delta syncs can report the deletion.
+ */
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "endorsement_tombstones")
+public class EndorsementTombstone implements JsonSerializable {
+
+    public EndorsementTombstone() {
+    }
+
+    public EndorsementTombstone(Endorsement endorsement, Date deletedAt) {
+        this.orgMrn = endorsement.getOrgMrn();
+        this.serviceMrn = endorsement.getServiceMrn();
+        this.serviceVersion = endorsement.getServiceVersion();
+        this.deletedAt = deletedAt;
+    }
+
+    @JsonIgnore
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = "native")
+    @GenericGenerator(name = "native", strategy = "native")
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "org_mrn", nullable = false)
+    private String orgMrn;
+
+    @Column(name = "service_mrn", nullable = false)
+    private String serviceMrn;
+
+    @Column(name = "service_version", nullable = false)
+    private String serviceVersion;
+
+    @Column(name = "deleted_at", nullable = false)
+    private Date deletedAt;
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.db.EndorsementCounter;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface EndorsementCounterRepository extends CrudRepository<EndorsementCounter, EndorsementCounter.Key>, EndorsementCounterRepositoryCustom {
+
+    List<EndorsementCounter> findByCounterTypeAndMrn(EndorsementCounter.Type counterType, String mrn);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.db.EndorsementCounter;
+
+import java.util.SortedMap;
+
+/**
+ * Counter operations that cannot be expressed as derived queries.
+ */
+public interface EndorsementCounterRepositoryCustom {
+
+    /**
+     * Adds the deltas to the counters with one upsert per counter, sent in JDBC batches. Counters that do not exist
+     * yet are created. The counters are written in key order, so concurrent transactions lock them in the same order.
+     *
+     * @param deltas the amount to add to each counter
+     */
+    void adjust(SortedMap<EndorsementCounter.Key, Long> deltas);
+
+    /**
+     * Replaces all counters with counts aggregated from the endorsements. Must be called inside a transaction.
+     *
+     * @return the number of counters
+     */
+    int rebuild();
+}
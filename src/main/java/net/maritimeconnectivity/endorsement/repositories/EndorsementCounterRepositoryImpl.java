@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.db.EndorsementCounter;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.SortedMap;
+
+public class EndorsementCounterRepositoryImpl implements EndorsementCounterRepositoryCustom {
+
+    private static final String MYSQL_ADJUST = "INSERT INTO endorsement_counters (counter_type, mrn, qualifier, endorsements) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE endorsements = endorsements + VALUES(endorsements)";
+
+    // Like the H2 upsert of the endorsements, the current value is selected from the existing row (if any)
+    private static final String H2_ADJUST = "MERGE INTO endorsement_counters (counter_type, mrn, qualifier, endorsements) " +
+            "KEY (counter_type, mrn, qualifier) " +
+            "SELECT ?, ?, ?, COALESCE(MAX(endorsements), 0) + ? FROM endorsement_counters WHERE counter_type = ? AND mrn = ? AND qualifier = ?";
+
+    private static final String COUNT = "INSERT INTO endorsement_counters (counter_type, mrn, qualifier, endorsements) " +
+            "SELECT '%s', %s, %s, COUNT(*) FROM endorsements GROUP BY %2$s, %3$s";
+
+    // Number of statements sent to the database per JDBC batch
+    private static final int BATCH_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void adjust(SortedMap<EndorsementCounter.Key, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            boolean h2 = EndorsementRepositoryImpl.isH2(connection);
+            try (PreparedStatement statement = connection.prepareStatement(h2 ? H2_ADJUST : MYSQL_ADJUST)) {
+                int pending = 0;
+                for (Map.Entry<EndorsementCounter.Key, Long> delta : deltas.entrySet()) {
+                    EndorsementCounter.Key key = delta.getKey();
+                    statement.setString(1, key.getCounterType().name());
+                    statement.setString(2, key.getMrn());
+                    statement.setString(3, key.getQualifier());
+                    statement.setLong(4, delta.getValue());
+                    if (h2) {
+                        statement.setString(5, key.getCounterType().name());
+                        statement.setString(6, key.getMrn());
+                        statement.setString(7, key.getQualifier());
+                    }
+                    statement.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            }
+        });
+    }
+
+    @Override
+    public int rebuild() {
+        executeOnCounters("DELETE FROM endorsement_counters");
+        return executeOnCounters(String.format(COUNT, EndorsementCounter.Type.SERVICE_VERSION, "service_mrn", "service_version"))
+                + executeOnCounters(String.format(COUNT, EndorsementCounter.Type.ORG_LEVEL, "org_mrn", "service_level"));
+    }
+
+    // Synchronized with the counters only, so that Hibernate does not invalidate the cached endorsements
+    private int executeOnCounters(String sql) {
+        return entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(EndorsementCounter.class)
+                .executeUpdate();
+    }
+}
@@ -16,20 +16,112 @@
 
 package net.maritimeconnectivity.endorsement.repositories;
 
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Date;
 import java.util.List;
 
-public interface EndorsementRepository extends PagingAndSortingRepository<Endorsement, Long> {
-    Page<Endorsement> findByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel, Pageable pageable);
-    Page<Endorsement> findByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, Pageable pageable);
-    List<Endorsement> findByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion);
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+import static org.hibernate.annotations.QueryHints.CACHE_REGION;
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+import static org.hibernate.annotations.QueryHints.READ_ONLY;
+
+/**
+ * The listing finders select the columns straight into new Endorsement instances through a constructor expression,
+ * so the listed endorsements are plain objects that never enter the persistence context: Hibernate keeps neither
+ * entity entries nor dirty checking snapshots for them. The finders of a single endorsement load it read-only.
+ * <p>
+ * The finders with the cacheable hint are served from the query cache when the second-level cache is enabled, see
+ * {@link net.maritimeconnectivity.endorsement.config.SecondLevelCacheConfig}. Hibernate invalidates their results
+ * whenever the endorsements table is written through it.
+ */
+public interface EndorsementRepository extends PagingAndSortingRepository<Endorsement, Long>, EndorsementRepositoryCustom {
+    String PROJECTION = "SELECT new net.maritimeconnectivity.endorsement.model.db.Endorsement(e.id, e.serviceMrn, e.serviceVersion, e.orgMrn, e.orgName, " +
+            "e.userMrn, e.parentMrn, e.parentVersion, e.serviceLevel, e.createdAt, e.updatedAt) FROM Endorsement e WHERE ";
+    String COUNT = "SELECT COUNT(e) FROM Endorsement e WHERE ";
+    String VERSION = "SELECT new net.maritimeconnectivity.endorsement.model.data.EndorsementVersion(COUNT(e), MAX(e.updatedAt)) FROM Endorsement e WHERE ";
+    String BY_ORG_AND_LEVEL = "e.orgMrn = :orgMrn AND e.serviceLevel = :serviceLevel";
+    String BY_SERVICE = "e.serviceMrn = :serviceMrn AND e.serviceVersion = :serviceVersion";
+    String BY_PARENT = "e.parentMrn = :parentMrn AND e.parentVersion = :parentVersion";
+    String BY_PARENT_AND_ORG = BY_PARENT + " AND e.orgMrn = :orgMrn";
+    // Seeks the one row of the org and service, and compares its version ignoring case like EndorsementService does
+    String BY_KEY = "e.orgMrn = :orgMrn AND e.serviceMrn = :serviceMrn AND LOWER(e.serviceVersion) = LOWER(:serviceVersion)";
+    String BY_SERVICES = "e.serviceMrn IN (:serviceMrns)";
+    String AFTER_KEY = " AND (e.createdAt > :createdAt OR (e.createdAt = :createdAt AND e.id > :id)) ORDER BY e.createdAt, e.id";
+    String LIST_FETCH_SIZE = "100";
+    String QUERY_REGION = "endorsement-queries";
+
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(value = PROJECTION + BY_ORG_AND_LEVEL, countQuery = COUNT + BY_ORG_AND_LEVEL)
+    Page<Endorsement> findByOrgMrnAndServiceLevel(@Param("orgMrn") String orgMrn, @Param("serviceLevel") String serviceLevel, Pageable pageable);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(value = PROJECTION + BY_SERVICE, countQuery = COUNT + BY_SERVICE)
+    Page<Endorsement> findByServiceMrnAndServiceVersion(@Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion, Pageable pageable);
+    @QueryHints({@QueryHint(name = FETCH_SIZE, value = LIST_FETCH_SIZE), @QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(PROJECTION + BY_SERVICE)
+    List<Endorsement> findByServiceMrnAndServiceVersion(@Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion);
+    @QueryHints({@QueryHint(name = READ_ONLY, value = "true"), @QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
     Endorsement findByOrgMrnAndServiceMrnAndServiceVersion(String orgMrn, String serviceMrn, String serviceVersion);
-    Page<Endorsement> findByParentMrnAndParentVersion(String parentMrn, String parentVersion, Pageable pageable);
-    Page<Endorsement> findByParentMrnAndParentVersionAndOrgMrn(String parentMrn, String parentVersion, String orgMrn, Pageable pageable);
-    Page<Endorsement> findByServiceMrnIn(List<String> serviceMrns, Pageable pageable);
+    @QueryHints({@QueryHint(name = READ_ONLY, value = "true"), @QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    Endorsement findByOrgMrnAndServiceMrn(String orgMrn, String serviceMrn);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(value = PROJECTION + BY_PARENT, countQuery = COUNT + BY_PARENT)
+    Page<Endorsement> findByParentMrnAndParentVersion(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion, Pageable pageable);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(value = PROJECTION + BY_PARENT_AND_ORG, countQuery = COUNT + BY_PARENT_AND_ORG)
+    Page<Endorsement> findByParentMrnAndParentVersionAndOrgMrn(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion, @Param("orgMrn") String orgMrn, Pageable pageable);
+    @Query(value = PROJECTION + BY_SERVICES, countQuery = COUNT + BY_SERVICES)
+    Page<Endorsement> findByServiceMrnIn(@Param("serviceMrns") List<String> serviceMrns, Pageable pageable);
+    // The endorsements updated after (updatedAt, id) in that order, for delta syncs. The first condition is implied by
+    // the others, it lets the database seek on the updated_at index.
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = LIST_FETCH_SIZE))
+    @Query(PROJECTION + "e.updatedAt >= :updatedAt AND (e.updatedAt > :updatedAt OR e.id > :id) ORDER BY e.updatedAt, e.id")
+    List<Endorsement> findByUpdatedAtAfter(@Param("updatedAt") Date updatedAt, @Param("id") Long id, Pageable pageable);
+
+    // Keyset variants of the paged finders: they return the rows after (createdAt, id) in that order, without a count query
+    @Query(PROJECTION + BY_ORG_AND_LEVEL + AFTER_KEY)
+    List<Endorsement> findByOrgMrnAndServiceLevelAfter(@Param("orgMrn") String orgMrn, @Param("serviceLevel") String serviceLevel, @Param("createdAt") Date createdAt, @Param("id") Long id, Pageable pageable);
+    @Query(PROJECTION + BY_SERVICE + AFTER_KEY)
+    List<Endorsement> findByServiceMrnAndServiceVersionAfter(@Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion, @Param("createdAt") Date createdAt, @Param("id") Long id, Pageable pageable);
+    @Query(PROJECTION + BY_PARENT + AFTER_KEY)
+    List<Endorsement> findByParentMrnAndParentVersionAfter(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion, @Param("createdAt") Date createdAt, @Param("id") Long id, Pageable pageable);
+    @Query(PROJECTION + BY_PARENT_AND_ORG + AFTER_KEY)
+    List<Endorsement> findByParentMrnAndParentVersionAndOrgMrnAfter(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion, @Param("orgMrn") String orgMrn, @Param("createdAt") Date createdAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Deletes the endorsement with a single statement, without loading it first.
+     *
+     * @return the number of deleted endorsements, 0 or 1
+     */
+    @Modifying
+    @Query("DELETE FROM Endorsement e WHERE e.orgMrn = :orgMrn AND e.serviceMrn = :serviceMrn AND e.serviceVersion = :serviceVersion")
+    int deleteByOrgMrnAndServiceMrnAndServiceVersion(@Param("orgMrn") String orgMrn, @Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion);
+
+    // Versions of the listings of the paged finders, aggregated over the same index
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(VERSION + BY_ORG_AND_LEVEL)
+    EndorsementVersion findVersionByOrgMrnAndServiceLevel(@Param("orgMrn") String orgMrn, @Param("serviceLevel") String serviceLevel);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(VERSION + BY_SERVICE)
+    EndorsementVersion findVersionByServiceMrnAndServiceVersion(@Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(VERSION + BY_PARENT)
+    EndorsementVersion findVersionByParentMrnAndParentVersion(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion);
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(VERSION + BY_PARENT_AND_ORG)
+    EndorsementVersion findVersionByParentMrnAndParentVersionAndOrgMrn(@Param("parentMrn") String parentMrn, @Param("parentVersion") String parentVersion, @Param("orgMrn") String orgMrn);
+    // The version of a single endorsement, read without loading the endorsement
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = CACHE_REGION, value = QUERY_REGION)})
+    @Query(VERSION + BY_KEY)
+    EndorsementVersion findVersionByOrgMrnAndServiceMrnAndServiceVersion(@Param("orgMrn") String orgMrn, @Param("serviceMrn") String serviceMrn, @Param("serviceVersion") String serviceVersion);
 
 }
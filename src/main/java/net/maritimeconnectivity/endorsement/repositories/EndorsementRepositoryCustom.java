@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Repository operations that cannot be expressed as derived queries.
+ */
+public interface EndorsementRepositoryCustom {
+
+    /**
+     * Inserts the endorsement, or updates the existing row with the same org MRN and service MRN, using a single
+     * native statement. The timestamps of the given endorsement are used as-is, except that created_at is kept
+     * when an existing row is updated.
+     *
+     * @param endorsement the endorsement to store
+     * @return the affected row count as reported by the driver. MySQL reports 1 for an insert and 2 for an update,
+     * while H2 reports 1 in both cases.
+     */
+    int upsert(Endorsement endorsement);
+
+    /**
+     * Upserts all the given endorsements like {@link #upsert(Endorsement)}, sending the statements to the database
+     * in JDBC batches.
+     *
+     * @param endorsements the endorsements to store
+     */
+    void upsertAll(List<Endorsement> endorsements);
+
+    /**
+     * Passes every endorsement matching the given filters to the consumer, in no particular order. The rows are read
+     * through a forward-only cursor and each entity is detached once it has been passed on, so memory use does not
+     * grow with the number of rows. Must be called inside a transaction.
+     *
+     * @param orgMrn only endorsements made by this org, or null for all orgs
+     * @param serviceMrn only endorsements of this service, or null for all services
+     * @param updatedSince only endorsements updated at or after this time, or null for all
+     * @param consumer receives each endorsement
+     * @return the number of endorsements passed to the consumer
+     */
+    long scroll(String orgMrn, String serviceMrn, Date updatedSince, Consumer<Endorsement> consumer);
+
+    /**
+     * Finds the endorsements of the given service versions. The query matches the (service MRN, service version)
+     * pairs themselves, so only endorsements of the requested versions are read. Many services are looked up in
+     * chunks of one query each.
+     *
+     * @param services the service versions to look up
+     * @return the endorsements, in no particular order. The returned instances are not managed.
+     */
+    List<Endorsement> findByServiceReferences(Collection<ServiceReference> services);
+
+    /**
+     * Finds the endorsements in the subtree under the given parent with a single recursive query: the endorsements
+     * with the parent as parent are at depth 1, the endorsements with one of those services as parent at depth 2 and
+     * so on. Needs a database with recursive common table expressions, i.e. MySQL 8 or H2.
+     *
+     * @param parentMrn the MRN of the root of the subtree
+     * @param parentVersion the version of the root of the subtree
+     * @param orgMrn only follow endorsements made by this org, or null for all orgs
+     * @param maxDepth the depth of the deepest endorsements returned
+     * @return the endorsements, ordered by depth. The returned instances are not managed.
+     */
+    List<Endorsement> findHierarchy(String parentMrn, String parentVersion, String orgMrn, int maxDepth);
+
+    /**
+     * Finds the version of the subtree returned by {@link #findHierarchy(String, String, String, int)} with the same
+     * recursive query, aggregated in the database.
+     */
+    EndorsementVersion findHierarchyVersion(String parentMrn, String parentVersion, String orgMrn, int maxDepth);
+
+    /**
+     * Deletes all endorsements matching the given filters with a single DELETE, and records a tombstone for each of
+     * them with a single INSERT ... SELECT over the same predicate. The matching rows are locked first with
+     * SELECT ... FOR UPDATE, which also returns their keys, so all three statements see the same rows. Must be called
+     * inside a transaction.
+     *
+     * @param orgMrn only endorsements made by this org, or null for all orgs
+     * @param serviceMrn only endorsements of this service, or null for all services
+     * @param serviceVersion only endorsements of this service version, or null for all versions
+     * @param deletedAt the time recorded in the tombstones
+     * @return the deleted endorsements, with only the org MRN, service MRN, service version and service level set
+     * @throws IllegalArgumentException if no filter is given, translated to InvalidDataAccessApiUsageException by
+     * the repository proxy
+     */
+    List<Endorsement> deleteAllMatching(String orgMrn, String serviceMrn, String serviceVersion, Date deletedAt);
+
+    /**
+     * Finds and locks the stored endorsements with the org MRN and service MRN of any of the given endorsements with
+     * SELECT ... FOR UPDATE, which only matches the requested pairs. Many pairs are locked in chunks of one query
+     * each. Must be called inside a transaction.
+     *
+     * @return the endorsements, with only the org MRN, service MRN, service version, service level and creation time
+     * set
+     */
+    List<Endorsement> findKeysForUpdate(Collection<Endorsement> endorsements);
+}
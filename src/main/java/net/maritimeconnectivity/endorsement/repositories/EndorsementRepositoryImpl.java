@@ -0,0 +1,372 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class EndorsementRepositoryImpl implements EndorsementRepositoryCustom {
+
+    private static final String MYSQL_UPSERT = "INSERT INTO endorsements (service_mrn, service_version, org_name, org_mrn, user_mrn, parent_mrn, parent_version, service_level, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE service_version = VALUES(service_version), org_name = VALUES(org_name), user_mrn = VALUES(user_mrn), " +
+            "parent_mrn = VALUES(parent_mrn), parent_version = VALUES(parent_version), service_level = VALUES(service_level), updated_at = VALUES(updated_at)";
+
+    // H2 has no ON DUPLICATE KEY UPDATE outside of MySQL mode, so MERGE on the unique key is used instead.
+    // created_at is selected from the existing row (if any) so that an update does not overwrite it.
+    private static final String H2_UPSERT = "MERGE INTO endorsements (service_mrn, service_version, org_name, org_mrn, user_mrn, parent_mrn, parent_version, service_level, created_at, updated_at) " +
+            "KEY (org_mrn, service_mrn) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ?, ?, COALESCE(MAX(created_at), ?), ? FROM endorsements WHERE org_mrn = ? AND service_mrn = ?";
+
+    private static final String COLUMNS = "id, service_mrn, service_version, org_mrn, org_name, user_mrn, parent_mrn, parent_version, service_level, created_at, updated_at";
+
+    // The recursion follows the parent_mrn/parent_version of the endorsements down from the given parent. A service
+    // endorsed by several orgs yields one row per org at the next level, so rows reached more than once (which UNION
+    // removes on MySQL but not on H2) are merged in the outer query, keeping the lowest depth.
+    private static final String TREE = "WITH RECURSIVE tree (" + COLUMNS + ", depth) AS (" +
+            "SELECT e.id, e.service_mrn, e.service_version, e.org_mrn, e.org_name, e.user_mrn, e.parent_mrn, e.parent_version, e.service_level, e.created_at, e.updated_at, 1 " +
+            "FROM endorsements e WHERE e.parent_mrn = :parentMrn AND e.parent_version = :parentVersion%1$s " +
+            "UNION " +
+            "SELECT e.id, e.service_mrn, e.service_version, e.org_mrn, e.org_name, e.user_mrn, e.parent_mrn, e.parent_version, e.service_level, e.created_at, e.updated_at, t.depth + 1 " +
+            "FROM endorsements e JOIN tree t ON e.parent_mrn = t.service_mrn AND e.parent_version = t.service_version WHERE t.depth < :maxDepth%1$s) ";
+    private static final String HIERARCHY = TREE + "SELECT " + COLUMNS + ", MIN(depth) AS min_depth FROM tree GROUP BY " + COLUMNS + " ORDER BY min_depth, created_at, id";
+    private static final String HIERARCHY_VERSION = TREE + "SELECT COUNT(DISTINCT id), MAX(updated_at) FROM tree";
+
+    // Number of statements sent to the database per JDBC batch
+    private static final int BATCH_SIZE = 100;
+
+    // Number of key pairs looked up per query, two parameters each
+    private static final int LOOKUP_CHUNK_SIZE = 100;
+
+    // Number of rows fetched from the database at a time when scrolling. MySQL only honours it with useCursorFetch=true
+    private static final int SCROLL_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int upsert(Endorsement endorsement) {
+        int affectedRows = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            boolean h2 = isH2(connection);
+            try (PreparedStatement statement = connection.prepareStatement(h2 ? H2_UPSERT : MYSQL_UPSERT)) {
+                bindUpsert(statement, endorsement, h2);
+                return statement.executeUpdate();
+            }
+        });
+        invalidateCaches();
+        return affectedRows;
+    }
+
+    @Override
+    public void upsertAll(List<Endorsement> endorsements) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            boolean h2 = isH2(connection);
+            try (PreparedStatement statement = connection.prepareStatement(h2 ? H2_UPSERT : MYSQL_UPSERT)) {
+                int pending = 0;
+                for (Endorsement endorsement : endorsements) {
+                    bindUpsert(statement, endorsement, h2);
+                    statement.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            }
+        });
+        invalidateCaches();
+    }
+
+    @Override
+    public long scroll(String orgMrn, String serviceMrn, Date updatedSince, Consumer<Endorsement> consumer) {
+        // Only the given filters are added, so the query can use the index of the filtered column
+        StringBuilder jpql = new StringBuilder("SELECT e FROM Endorsement e WHERE 1 = 1");
+        if (orgMrn != null) {
+            jpql.append(" AND e.orgMrn = :orgMrn");
+        }
+        if (serviceMrn != null) {
+            jpql.append(" AND e.serviceMrn = :serviceMrn");
+        }
+        if (updatedSince != null) {
+            jpql.append(" AND e.updatedAt >= :updatedSince");
+        }
+        Session session = entityManager.unwrap(Session.class);
+        Query<Endorsement> query = session.createQuery(jpql.toString(), Endorsement.class)
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE);
+        if (orgMrn != null) {
+            query.setParameter("orgMrn", orgMrn);
+        }
+        if (serviceMrn != null) {
+            query.setParameter("serviceMrn", serviceMrn);
+        }
+        if (updatedSince != null) {
+            query.setParameter("updatedSince", updatedSince);
+        }
+        long count = 0;
+        try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                Endorsement endorsement = (Endorsement) results.get(0);
+                session.detach(endorsement);
+                consumer.accept(endorsement);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<Endorsement> findByServiceReferences(Collection<ServiceReference> services) {
+        List<ServiceReference> pending = new ArrayList<>(services);
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += LOOKUP_CHUNK_SIZE) {
+            List<ServiceReference> chunk = pending.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, pending.size()));
+            // The IN list lets databases without index merging for OR seek on the MRNs, the pairs drop the other versions
+            String jpql = EndorsementRepository.PROJECTION + EndorsementRepository.BY_SERVICES + " AND "
+                    + pairs("e.serviceMrn", "serviceMrn", "e.serviceVersion", "serviceVersion", chunk.size());
+            List<String> serviceMrns = new ArrayList<>(chunk.size());
+            for (ServiceReference service : chunk) {
+                serviceMrns.add(service.getServiceMrn());
+            }
+            TypedQuery<Endorsement> query = entityManager.createQuery(jpql, Endorsement.class)
+                    .setHint(QueryHints.FETCH_SIZE, EndorsementRepository.LIST_FETCH_SIZE)
+                    .setParameter("serviceMrns", serviceMrns);
+            for (int j = 0; j < chunk.size(); j++) {
+                query.setParameter("serviceMrn" + j, chunk.get(j).getServiceMrn());
+                query.setParameter("serviceVersion" + j, chunk.get(j).getServiceVersion());
+            }
+            endorsements.addAll(query.getResultList());
+        }
+        return endorsements;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Endorsement> findHierarchy(String parentMrn, String parentVersion, String orgMrn, int maxDepth) {
+        List<Object[]> rows = createHierarchyQuery(HIERARCHY, parentMrn, parentVersion, orgMrn, maxDepth).getResultList();
+        List<Endorsement> endorsements = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            endorsements.add(new Endorsement(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3], (String) row[4],
+                    (String) row[5], (String) row[6], (String) row[7], (String) row[8], (Date) row[9], (Date) row[10]));
+        }
+        return endorsements;
+    }
+
+    @Override
+    public EndorsementVersion findHierarchyVersion(String parentMrn, String parentVersion, String orgMrn, int maxDepth) {
+        Object[] row = (Object[]) createHierarchyQuery(HIERARCHY_VERSION, parentMrn, parentVersion, orgMrn, maxDepth).getSingleResult();
+        return new EndorsementVersion(((Number) row[0]).longValue(), (Date) row[1]);
+    }
+
+    private javax.persistence.Query createHierarchyQuery(String sql, String parentMrn, String parentVersion, String orgMrn, int maxDepth) {
+        javax.persistence.Query query = entityManager.createNativeQuery(String.format(sql, orgMrn != null ? " AND e.org_mrn = :orgMrn" : ""))
+                .setParameter("parentMrn", parentMrn)
+                .setParameter("parentVersion", parentVersion)
+                .setParameter("maxDepth", maxDepth);
+        if (orgMrn != null) {
+            query.setParameter("orgMrn", orgMrn);
+        }
+        return query;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Endorsement> deleteAllMatching(String orgMrn, String serviceMrn, String serviceVersion, Date deletedAt) {
+        if (orgMrn == null && serviceMrn == null && serviceVersion == null) {
+            throw new IllegalArgumentException("At least one filter is needed to delete endorsements");
+        }
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        if (orgMrn != null) {
+            where.append(" AND org_mrn = :orgMrn");
+        }
+        if (serviceMrn != null) {
+            where.append(" AND service_mrn = :serviceMrn");
+        }
+        if (serviceVersion != null) {
+            where.append(" AND service_version = :serviceVersion");
+        }
+        List<Object[]> rows = bindFilters(entityManager.createNativeQuery("SELECT org_mrn, service_mrn, service_version, service_level FROM endorsements" + where + " FOR UPDATE"),
+                orgMrn, serviceMrn, serviceVersion).getResultList();
+        List<Endorsement> deleted = new ArrayList<>(rows.size());
+        if (rows.isEmpty()) {
+            return deleted;
+        }
+        // The synchronized tables limit the cache invalidation of each statement to the table it writes
+        bindFilters(entityManager.createNativeQuery("INSERT INTO endorsement_tombstones (org_mrn, service_mrn, service_version, deleted_at) " +
+                "SELECT org_mrn, service_mrn, service_version, :deletedAt FROM endorsements" + where)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(EndorsementTombstone.class), orgMrn, serviceMrn, serviceVersion)
+                .setParameter("deletedAt", deletedAt)
+                .executeUpdate();
+        bindFilters(entityManager.createNativeQuery("DELETE FROM endorsements" + where)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(Endorsement.class), orgMrn, serviceMrn, serviceVersion)
+                .executeUpdate();
+        for (Object[] row : rows) {
+            deleted.add(toKey(row));
+        }
+        return deleted;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Endorsement> findKeysForUpdate(Collection<Endorsement> endorsements) {
+        Set<List<String>> unique = new LinkedHashSet<>();
+        for (Endorsement endorsement : endorsements) {
+            unique.add(Arrays.asList(endorsement.getOrgMrn(), endorsement.getServiceMrn()));
+        }
+        List<List<String>> pending = new ArrayList<>(unique);
+        List<Endorsement> keys = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += LOOKUP_CHUNK_SIZE) {
+            List<List<String>> chunk = pending.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, pending.size()));
+            // Only the requested pairs are locked, the IN list lets databases without index merging for OR seek on it
+            javax.persistence.Query query = entityManager.createNativeQuery("SELECT org_mrn, service_mrn, service_version, service_level, created_at FROM endorsements " +
+                    "WHERE org_mrn IN (:orgMrns) AND " + pairs("org_mrn", "orgMrn", "service_mrn", "serviceMrn", chunk.size()) + " FOR UPDATE");
+            List<String> orgMrns = new ArrayList<>(chunk.size());
+            for (int j = 0; j < chunk.size(); j++) {
+                orgMrns.add(chunk.get(j).get(0));
+                query.setParameter("orgMrn" + j, chunk.get(j).get(0));
+                query.setParameter("serviceMrn" + j, chunk.get(j).get(1));
+            }
+            List<Object[]> rows = query.setParameter("orgMrns", orgMrns).getResultList();
+            for (Object[] row : rows) {
+                Endorsement key = toKey(row);
+                key.setCreatedAt((Date) row[4]);
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Builds a predicate matching any of the given number of (first, second) pairs, bound to the parameters named
+     * after the columns followed by the index of the pair.
+     */
+    private static String pairs(String first, String firstParameter, String second, String secondParameter, int count) {
+        StringBuilder predicate = new StringBuilder("(");
+        for (int j = 0; j < count; j++) {
+            predicate.append(j > 0 ? " OR " : "").append('(')
+                    .append(first).append(" = :").append(firstParameter).append(j).append(" AND ")
+                    .append(second).append(" = :").append(secondParameter).append(j).append(')');
+        }
+        return predicate.append(')').toString();
+    }
+
+    /**
+     * The upserts write to JDBC directly, so Hibernate does not know they changed the endorsements table. The
+     * Endorsement cache region is evicted, and the update timestamp of the table is moved on so that the cached
+     * queries on it are invalidated. Like for the bulk updates of Hibernate both happen now and again when the
+     * transaction completes, so the rows as they were before the commit cannot be cached in between. Skipped when the
+     * second-level cache is disabled.
+     */
+    private void invalidateCaches() {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        SessionFactoryImplementor sessionFactory = session.getFactory();
+        if (!sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled()) {
+            return;
+        }
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        UpdateTimestampsCache timestamps = sessionFactory.getCache().getUpdateTimestampsCache();
+        Serializable[] tables = sessionFactory.getMetamodel().entityPersister(Endorsement.class).getQuerySpaces();
+        cache.evict(Endorsement.class);
+        if (timestamps != null) {
+            timestamps.preInvalidate(tables, session);
+        }
+        session.getActionQueue().registerProcess((success, completed) -> {
+            cache.evict(Endorsement.class);
+            if (timestamps != null) {
+                timestamps.invalidate(tables, completed);
+            }
+        });
+    }
+
+    private static Endorsement toKey(Object[] row) {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn((String) row[0]);
+        endorsement.setServiceMrn((String) row[1]);
+        endorsement.setServiceVersion((String) row[2]);
+        endorsement.setServiceLevel((String) row[3]);
+        return endorsement;
+    }
+
+    private static javax.persistence.Query bindFilters(javax.persistence.Query query, String orgMrn, String serviceMrn, String serviceVersion) {
+        if (orgMrn != null) {
+            query.setParameter("orgMrn", orgMrn);
+        }
+        if (serviceMrn != null) {
+            query.setParameter("serviceMrn", serviceMrn);
+        }
+        if (serviceVersion != null) {
+            query.setParameter("serviceVersion", serviceVersion);
+        }
+        return query;
+    }
+
+    static boolean isH2(Connection connection) throws SQLException {
+        return "H2".equals(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private static void bindUpsert(PreparedStatement statement, Endorsement endorsement, boolean h2) throws SQLException {
+        statement.setString(1, endorsement.getServiceMrn());
+        statement.setString(2, endorsement.getServiceVersion());
+        statement.setString(3, endorsement.getOrgName());
+        statement.setString(4, endorsement.getOrgMrn());
+        statement.setString(5, endorsement.getUserMrn());
+        statement.setString(6, endorsement.getParentMrn());
+        statement.setString(7, endorsement.getParentVersion());
+        statement.setString(8, endorsement.getServiceLevel());
+        statement.setTimestamp(9, new Timestamp(endorsement.getCreatedAt().getTime()));
+        statement.setTimestamp(10, new Timestamp(endorsement.getUpdatedAt().getTime()));
+        if (h2) {
+            statement.setString(11, endorsement.getOrgMrn());
+            statement.setString(12, endorsement.getServiceMrn());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface EndorsementTombstoneRepository extends CrudRepository<EndorsementTombstone, Long> {
+
+    // The tombstones recorded after (deletedAt, id) in that order, for delta syncs, see EndorsementRepository.findByUpdatedAtAfter
+    @Query("SELECT t FROM EndorsementTombstone t WHERE t.deletedAt >= :deletedAt AND (t.deletedAt > :deletedAt OR t.id > :id) ORDER BY t.deletedAt, t.id")
+    List<EndorsementTombstone> findByDeletedAtAfter(@Param("deletedAt") Date deletedAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Deletes the tombstones of the deletions made before the given time with a single statement.
+     *
+     * @return the number of deleted tombstones
+     */
+    @Modifying
+    @Query("DELETE FROM EndorsementTombstone t WHERE t.deletedAt < :before")
+    int deleteByDeletedAtBefore(@Param("before") Date before);
+}
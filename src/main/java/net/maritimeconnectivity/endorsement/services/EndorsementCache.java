@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import net.maritimeconnectivity.endorsement.config.ReplicaRoutingDataSource;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of endorsements keyed on (org MRN, service MRN), the unique key of the endorsements
+ * table. Since there is at most one row per key, a cached row also answers lookups for other versions of the same
+ * service, and a cached empty value remembers that the org has not endorsed the service at all. The MRNs of the
+ * key are lowercased, as the database compares them case-insensitively.
+ * <p>
+ * For a while after a key has been evicted because of a write it is loaded from the primary database, see
+ * {@link ReplicaRoutingDataSource#onPrimary}, so that a lagging read replica cannot put the row as it was before the
+ * write back in the cache.
+ */
+@Component
+public class EndorsementCache {
+
+    private final Cache<Key, Optional<Endorsement>> cache;
+
+    // Keys evicted because of a write, kept for the primary read window
+    private final Cache<Key, Boolean> written;
+
+    public EndorsementCache(MeterRegistry meterRegistry,
+                            @Value("${endorsement.cache.maximum-size:10000}") long maximumSize,
+                            @Value("${endorsement.cache.expire-after-write-seconds:60}") long expireAfterWriteSeconds,
+                            @Value("${endorsement.cache.primary-read-seconds:60}") long primaryReadSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.written = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(primaryReadSeconds, TimeUnit.SECONDS)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "endorsements");
+    }
+
+    /**
+     * Returns the endorsement stored for the given org and service, loading it with the given function on a miss.
+     */
+    public Optional<Endorsement> get(String orgMrn, String serviceMrn, Function<Key, Optional<Endorsement>> loader) {
+        return cache.get(new Key(orgMrn, serviceMrn), key -> written.getIfPresent(key) != null
+                ? ReplicaRoutingDataSource.onPrimary(() -> loader.apply(key)) : loader.apply(key));
+    }
+
+    /**
+     * Removes the entry of the given org and service. When called inside a transaction the entry is removed again
+     * when the transaction completes, so a concurrent read cannot keep the row as it was before the commit. The
+     * primary read window starts again at that point.
+     */
+    public void evict(String orgMrn, String serviceMrn) {
+        Key key = new Key(orgMrn, serviceMrn);
+        written.put(key, Boolean.TRUE);
+        cache.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    written.put(key, Boolean.TRUE);
+                    cache.invalidate(key);
+                }
+            });
+        }
+    }
+
+    @EqualsAndHashCode
+    public static class Key {
+        final String orgMrn;
+        final String serviceMrn;
+
+        Key(String orgMrn, String serviceMrn) {
+            this.orgMrn = orgMrn != null ? orgMrn.toLowerCase(Locale.ROOT) : null;
+            this.serviceMrn = serviceMrn != null ? serviceMrn.toLowerCase(Locale.ROOT) : null;
+        }
+    }
+}
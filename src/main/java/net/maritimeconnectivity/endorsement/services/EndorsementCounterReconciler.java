@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementCounterRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Periodically rebuilds the endorsement counters from the endorsements, which repairs any drift, for example from
+ * rows changed directly in the database.
+ */
+@Component
+@Slf4j
+public class EndorsementCounterReconciler {
+
+    @Autowired
+    private EndorsementCounterRepository endorsementCounterRepository;
+
+    @Scheduled(cron = "${endorsement.counters.reconciliation-cron:0 30 3 * * *}")
+    @Transactional
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        int counters = endorsementCounterRepository.rebuild();
+        log.info("Rebuilt {} endorsement counters in {} ms", counters, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementEvent;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory feed of the endorsement changes made through {@link EndorsementService}, pushed to subscribers as
+ * Server-Sent Events. The latest changes are kept in a fixed size ring buffer, so a subscriber that reconnects with
+ * the id of the last event it received gets the changes it missed, as long as they are still in the buffer. When
+ * they are not, or the id is from before the service was restarted, the subscriber gets a reset event and has to
+ * re-read the endorsements it follows. Event ids are made of the start time of the service and a sequence number.
+ * <p>
+ * Every subscriber has a bounded queue of the events it has yet to be sent, which a sender thread drains for one
+ * subscriber at a time, so a slow subscriber neither holds up the other subscribers nor the threads that change
+ * endorsements. A subscriber whose queue is full is completed, and can reconnect to resume from the ring buffer.
+ * The sender threads are a fixed pool, and a sender sends a limited batch before moving on to the next subscriber.
+ * The number of subscribers is capped, subscribing beyond the cap is refused with a
+ * {@link RejectedExecutionException}.
+ */
+@Component
+@Slf4j
+public class EndorsementEventFeed {
+
+    public static final String RESET_EVENT = "reset";
+
+    // Events sent to one subscriber before its sender thread moves on to the next subscriber
+    private static final int SEND_BATCH_SIZE = 100;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final EndorsementEvent[] buffer;
+    private final long timeoutMillis;
+    private final int queueSize;
+    private final int maxSubscribers;
+    private final Counter overflows;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger senderCount = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+
+    // Guarded by this, like the buffer and the queueing of events
+    private long lastSequence;
+
+    public EndorsementEventFeed(MeterRegistry meterRegistry,
+                                @Value("${endorsement.events.buffer-size:1000}") int bufferSize,
+                                @Value("${endorsement.events.timeout-seconds:600}") long timeoutSeconds,
+                                @Value("${endorsement.events.subscriber-queue-size:1000}") int queueSize,
+                                @Value("${endorsement.events.max-subscribers:1000}") int maxSubscribers,
+                                @Value("${endorsement.events.sender-threads:4}") int senderThreads) {
+        this.buffer = new EndorsementEvent[bufferSize];
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        this.queueSize = queueSize;
+        this.maxSubscribers = maxSubscribers;
+        // A subscriber has at most one send queued, so the work queue is bounded by the number of subscribers
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "endorsement-events-" + senderCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders.allowCoreThreadTimeOut(true);
+        this.overflows = meterRegistry.counter("endorsement.events.overflows");
+        meterRegistry.gaugeCollectionSize("endorsement.events.subscribers", Tags.empty(), subscribers);
+    }
+
+    /**
+     * Publishes a change of the given endorsement. When called inside a transaction the change is only published
+     * once the transaction has been committed.
+     */
+    public void publish(EndorsementEvent.Type type, Endorsement endorsement) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    append(type, endorsement);
+                }
+            });
+        } else {
+            append(type, endorsement);
+        }
+    }
+
+    /**
+     * Subscribes to the changes of the endorsements matching the given filters.
+     *
+     * @param serviceMrn only changes of endorsements of this service, or null for all services
+     * @param orgMrn only changes of endorsements made by this org, or null for all orgs
+     * @param lastEventId the id of the last event the subscriber has received, or null to only get new changes
+     * @return the emitter the events are sent through
+     * @throws RejectedExecutionException if the feed already has the maximum number of subscribers
+     */
+    public SseEmitter subscribe(String serviceMrn, String orgMrn, String lastEventId) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), serviceMrn, orgMrn, queueSize);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        synchronized (this) {
+            if (subscribers.size() >= maxSubscribers) {
+                throw new RejectedExecutionException("The endorsement event feed has reached its maximum of " + maxSubscribers + " subscribers");
+            }
+            if (lastEventId != null) {
+                long sequence = parseSequence(lastEventId);
+                boolean replayed = sequence >= 0 && sequence <= lastSequence && sequence >= lastSequence - buffer.length;
+                for (long next = sequence + 1; replayed && next <= lastSequence; next++) {
+                    replayed = offer(subscriber, buffer[(int) (next % buffer.length)]);
+                }
+                if (!replayed) {
+                    // The subscriber has missed events that are no longer buffered, or has an id from before a restart
+                    subscriber.queue.clear();
+                    subscriber.queue.add(SseEmitter.event().id(eventId(lastSequence)).name(RESET_EVENT).data(""));
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        scheduleSend(subscriber);
+        return subscriber.emitter;
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void append(EndorsementEvent.Type type, Endorsement endorsement) {
+        EndorsementEvent event = new EndorsementEvent();
+        event.setType(type);
+        event.setEndorsement(endorsement);
+        synchronized (this) {
+            event.setId(eventId(++lastSequence));
+            buffer[(int) (lastSequence % buffer.length)] = event;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.overflowed && !offer(subscriber, event)) {
+                    // The sender completes the subscriber, completing it here could wait for a send in progress
+                    log.debug("Event subscriber has fallen {} events behind, dropping it", queueSize);
+                    overflows.increment();
+                    subscriber.overflowed = true;
+                    subscriber.queue.clear();
+                }
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            scheduleSend(subscriber);
+        }
+    }
+
+    /**
+     * Queues the event if the subscriber follows its endorsement.
+     *
+     * @return false if the queue of the subscriber is full
+     */
+    private static boolean offer(Subscriber subscriber, EndorsementEvent event) {
+        if (!subscriber.matches(event.getEndorsement())) {
+            return true;
+        }
+        return subscriber.queue.offer(SseEmitter.event()
+                .id(event.getId())
+                .name(event.getType().name().toLowerCase(Locale.ROOT))
+                .data(event, MediaType.APPLICATION_JSON));
+    }
+
+    private void scheduleSend(Subscriber subscriber) {
+        if ((subscriber.overflowed || !subscriber.queue.isEmpty()) && subscriber.sending.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> send(subscriber));
+            } catch (RejectedExecutionException e) {
+                // The feed is closing, and completes the subscriber itself
+                subscriber.sending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Sends a batch of the queued events of the subscriber. Runs for one subscriber on one sender thread at a time.
+     */
+    private void send(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            for (int sent = 0; sent < SEND_BATCH_SIZE && !subscriber.overflowed && (event = subscriber.queue.poll()) != null; sent++) {
+                subscriber.emitter.send(event);
+            }
+            if (subscriber.overflowed) {
+                subscribers.remove(subscriber);
+                subscriber.emitter.complete();
+                return;
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping event subscriber: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return;
+        } finally {
+            subscriber.sending.set(false);
+        }
+        // The rest of the queue, and events queued after it was found empty but before sending was cleared, are sent
+        // by another run, queued behind the other subscribers
+        scheduleSend(subscriber);
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * @return the sequence number of an event id of the current epoch, or -1 for any other id
+     */
+    private long parseSequence(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final String serviceMrn;
+        private final String orgMrn;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // Set once the queue has been full, the subscriber then gets no more events
+        private volatile boolean overflowed;
+
+        Subscriber(SseEmitter emitter, String serviceMrn, String orgMrn, int queueSize) {
+            this.emitter = emitter;
+            this.serviceMrn = serviceMrn;
+            this.orgMrn = orgMrn;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        boolean matches(Endorsement endorsement) {
+            return (serviceMrn == null || serviceMrn.equals(endorsement.getServiceMrn()))
+                    && (orgMrn == null || orgMrn.equals(endorsement.getOrgMrn()));
+        }
+    }
+}
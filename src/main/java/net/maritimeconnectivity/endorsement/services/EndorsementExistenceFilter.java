@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import net.maritimeconnectivity.endorsement.utils.BloomFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Locale;
+
+/**
+ * Bloom filter over the (org MRN, service MRN, service version) keys of the stored endorsements, which answers most
+ * lookups of endorsements that do not exist without going to the database. It is built from the endorsements table
+ * at startup and every written endorsement is added to it. Deleted endorsements cannot be removed, so the filter is
+ * rebuilt periodically to keep them from piling up as false positives. Until the first build has finished every
+ * endorsement might exist.
+ * <p>
+ * The keys are compared case-insensitively like the default collation of the table does, so they are lowercased
+ * before they are hashed. Rows with a null key part cannot be looked up and are left out.
+ */
+@Component
+@Slf4j
+public class EndorsementExistenceFilter {
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${endorsement.existence-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${endorsement.existence-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${endorsement.existence-filter.minimum-size:10000}")
+    private long minimumSize;
+
+    private volatile BloomFilter filter;
+
+    // The filter being rebuilt, which receives the writes made while the endorsements are read
+    private volatile BloomFilter building;
+
+    // Not read-only, so that the table is read on the primary and not on a replica that may lag behind it
+    private TransactionTemplate primaryTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        primaryTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Whether the filter has been built, and so answers {@link #mightExist} from the stored keys.
+     */
+    public boolean isBuilt() {
+        return this.filter != null;
+    }
+
+    /**
+     * Returns false if there definitely is no endorsement with the given key. The outcome is counted in the
+     * endorsement.existence-filter.lookups metric, tagged absent or maybe.
+     */
+    public boolean mightExist(String orgMrn, String serviceMrn, String serviceVersion) {
+        BloomFilter current = this.filter;
+        if (current == null || !hasKey(orgMrn, serviceMrn, serviceVersion)) {
+            return true;
+        }
+        boolean maybe = current.mightContain(hash(orgMrn, serviceMrn, serviceVersion));
+        this.meterRegistry.counter("endorsement.existence-filter.lookups", "result", maybe ? "maybe" : "absent").increment();
+        return maybe;
+    }
+
+    /**
+     * Counts a lookup the filter let through that found nothing. Only to be called for lookups made once the filter
+     * was built.
+     */
+    public void recordFalsePositive() {
+        this.meterRegistry.counter("endorsement.existence-filter.lookups", "result", "false-positive").increment();
+    }
+
+    /**
+     * Adds the key of the endorsement. When called inside a transaction the key is added again when the transaction
+     * commits, so it also ends up in a filter whose rebuild started reading before the commit.
+     */
+    public void add(Endorsement endorsement) {
+        if (!hasKey(endorsement.getOrgMrn(), endorsement.getServiceMrn(), endorsement.getServiceVersion())) {
+            return;
+        }
+        long hash = hash(endorsement.getOrgMrn(), endorsement.getServiceMrn(), endorsement.getServiceVersion());
+        put(hash);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    put(hash);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds a new filter sized for twice the current number of endorsements from the endorsements table and swaps it
+     * in. Endorsements committed after the new filter is created are added to both filters, and the table is read
+     * on the primary in a transaction that starts after that, so the new filter has every endorsement committed before
+     * the swap whatever the isolation level.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${endorsement.existence-filter.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${endorsement.existence-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        BloomFilter rebuilt = new BloomFilter(Math.max(this.endorsementRepository.count() * 2, minimumSize), falsePositiveRate);
+        this.building = rebuilt;
+        long keys;
+        try {
+            keys = this.primaryTransaction.execute(status -> this.endorsementRepository.scroll(null, null, null, e -> {
+                if (hasKey(e.getOrgMrn(), e.getServiceMrn(), e.getServiceVersion())) {
+                    rebuilt.put(hash(e.getOrgMrn(), e.getServiceMrn(), e.getServiceVersion()));
+                }
+            }));
+            this.filter = rebuilt;
+        } finally {
+            this.building = null;
+        }
+        log.debug("Built the endorsement existence filter from {} endorsements into {} bits in {} ms",
+                keys, rebuilt.getBitCount(), System.currentTimeMillis() - started);
+    }
+
+    private static boolean hasKey(String orgMrn, String serviceMrn, String serviceVersion) {
+        return orgMrn != null && serviceMrn != null && serviceVersion != null;
+    }
+
+    private static long hash(String orgMrn, String serviceMrn, String serviceVersion) {
+        return BloomFilter.hash(orgMrn.toLowerCase(Locale.ROOT), serviceMrn.toLowerCase(Locale.ROOT), serviceVersion.toLowerCase(Locale.ROOT));
+    }
+
+    private void put(long hash) {
+        // The rebuild swaps the filter in before it clears building, so reading them the other way round could miss
+        // the new filter in both
+        BloomFilter next = this.building;
+        if (next != null) {
+            next.put(hash);
+        }
+        BloomFilter current = this.filter;
+        if (current != null) {
+            current.put(hash);
+        }
+    }
+}
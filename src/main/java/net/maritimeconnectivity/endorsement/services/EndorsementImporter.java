@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportFailure;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportResult;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.validators.EndorsementValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Imports endorsements from newline delimited JSON, one endorsement per line. Each line is parsed straight from the
+ * input with the Jackson streaming parser, without reading the line into memory first, and lines longer than the
+ * maximum record size are skipped unread. The valid endorsements are stored in chunks, each in its own transaction,
+ * so memory use is bounded by the chunk size and the record size. Lines that cannot be parsed, validated or stored
+ * are reported in the result instead of aborting the import, and chunks that were committed before a failure stay
+ * committed.
+ * <p>
+ * Every line gets a parser of its own: a parser cannot find the start of the next value after a syntax error, but
+ * the end of the line can always be found.
+ */
+@Service
+@Slf4j
+public class EndorsementImporter {
+
+    // Maximum number of failed lines listed in the result, further failures are only counted
+    private static final int MAX_LISTED_FAILURES = 1000;
+
+    @Autowired
+    private EndorsementService endorsementService;
+
+    @Autowired
+    private EndorsementValidator endorsementValidator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${endorsement.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${endorsement.import.max-record-bytes:65536}")
+    private int maxRecordBytes;
+
+    /**
+     * @param input the NDJSON input, which is not closed
+     * @param hasAccess decides whether the caller may store the given endorsement
+     */
+    public EndorsementImportResult importEndorsements(InputStream input, Predicate<Endorsement> hasAccess) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(Endorsement.class);
+        RecordInputStream records = new RecordInputStream(input, maxRecordBytes);
+        EndorsementImportResult result = new EndorsementImportResult();
+        List<Endorsement> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        while (records.nextRecord()) {
+            lineNumber++;
+            Endorsement endorsement;
+            try (JsonParser parser = objectMapper.getFactory().createParser(records)) {
+                MappingIterator<Endorsement> values = reader.readValues(parser);
+                if (!values.hasNextValue()) {
+                    continue;
+                }
+                endorsement = values.nextValue();
+                if (values.hasNextValue()) {
+                    addFailure(result, lineNumber, Collections.singletonList("Invalid JSON: expected a single object on the line"));
+                    continue;
+                }
+            } catch (JsonProcessingException e) {
+                addFailure(result, lineNumber, Collections.singletonList("Invalid JSON at column " + e.getLocation().getColumnNr() + ": " + e.getOriginalMessage()));
+                continue;
+            } catch (RecordTooLargeException e) {
+                addFailure(result, lineNumber, Collections.singletonList(e.getMessage()));
+                continue;
+            }
+            if (endorsement == null) {
+                addFailure(result, lineNumber, Collections.singletonList("Invalid JSON: expected an object"));
+                continue;
+            }
+            Errors errors = new BeanPropertyBindingResult(endorsement, "endorsement");
+            endorsementValidator.validate(endorsement, errors);
+            if (errors.hasErrors()) {
+                List<String> messages = new ArrayList<>();
+                for (FieldError error : errors.getFieldErrors()) {
+                    messages.add(error.getField() + ": " + error.getDefaultMessage());
+                }
+                addFailure(result, lineNumber, messages);
+            } else if (!hasAccess.test(endorsement)) {
+                addFailure(result, lineNumber, Collections.singletonList("Access denied to org " + endorsement.getOrgMrn()));
+            } else {
+                chunk.add(endorsement);
+                chunkLines.add(lineNumber);
+                if (chunk.size() >= chunkSize) {
+                    storeChunk(result, chunk, chunkLines);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            storeChunk(result, chunk, chunkLines);
+        }
+        return result;
+    }
+
+    private void storeChunk(EndorsementImportResult result, List<Endorsement> chunk, List<Long> chunkLines) {
+        try {
+            endorsementService.upsertEndorsements(chunk);
+            result.setImported(result.getImported() + chunk.size());
+        } catch (DataAccessException e) {
+            log.error("Could not store endorsement chunk", e);
+            List<String> messages = Collections.singletonList("Could not store endorsements: " + e.getMostSpecificCause().getMessage());
+            for (Long line : chunkLines) {
+                addFailure(result, line, messages);
+            }
+        }
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    /**
+     * Exposes the input one line at a time: reads return the bytes of the current line, without the line break, and
+     * then end of stream until {@link #nextRecord()} moves on to the next line. Reading more than the maximum record
+     * size from a line fails. Closing it does not close the input.
+     */
+    private static class RecordInputStream extends InputStream {
+
+        private final InputStream input;
+        private final int maxRecordBytes;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+        private boolean endOfInput;
+        // Whether the line break of the current line has been reached, true before the first line
+        private boolean endOfRecord = true;
+        private int recordBytes;
+
+        RecordInputStream(InputStream input, int maxRecordBytes) {
+            this.input = input;
+            this.maxRecordBytes = maxRecordBytes;
+        }
+
+        /**
+         * Skips what is left of the current line, without keeping it.
+         *
+         * @return false if there are no more lines
+         */
+        boolean nextRecord() throws IOException {
+            while (!endOfRecord) {
+                if (position == limit && !fill()) {
+                    break;
+                }
+                scan(limit - position);
+            }
+            if (position == limit && !fill()) {
+                return false;
+            }
+            endOfRecord = false;
+            recordBytes = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (endOfRecord || (position == limit && !fill())) {
+                endOfRecord = true;
+                return -1;
+            }
+            int start = position;
+            int length = scan(Math.min(len, limit - position));
+            if (length == 0) {
+                return -1;
+            }
+            recordBytes += length;
+            if (recordBytes > maxRecordBytes) {
+                throw new RecordTooLargeException("Line is longer than " + maxRecordBytes + " bytes");
+            }
+            System.arraycopy(buffer, start, b, off, length);
+            return length;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        // Moves past at most count buffered bytes of the current line, and past its line break if that comes first.
+        // Returns the number of bytes of the line moved past.
+        private int scan(int count) {
+            int end = position + count;
+            for (int i = position; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    int length = i - position;
+                    position = i + 1;
+                    endOfRecord = true;
+                    return length;
+                }
+            }
+            position = end;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (endOfInput) {
+                return false;
+            }
+            int read = input.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                endOfInput = true;
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+    }
+
+    private static class RecordTooLargeException extends IOException {
+        RecordTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private static void addFailure(EndorsementImportResult result, long line, List<String> errors) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getFailures().size() < MAX_LISTED_FAILURES) {
+            EndorsementImportFailure failure = new EndorsementImportFailure();
+            failure.setLine(line);
+            failure.setErrors(errors);
+            result.getFailures().add(failure);
+        }
+    }
+}
@@ -17,11 +17,23 @@
 package net.maritimeconnectivity.endorsement.services;
 
 
+import net.maritimeconnectivity.endorsement.model.data.EndorsementCursorPage;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementDelta;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementList;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementNode;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.OrgStats;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.data.ServiceVersionStats;
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.utils.DeltaCursor;
+import net.maritimeconnectivity.endorsement.utils.KeysetCursor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface EndorsementService {
     Page<Endorsement> listByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel, Pageable pageable);
@@ -29,8 +41,28 @@ public interface EndorsementService {
     List<Endorsement> listByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion);
     Page<Endorsement> listByParentMrnAndParentVersion(String serviceMrn, String parentVersion, Pageable pageable);
     Page<Endorsement> listByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn, Pageable pageable);
+    List<EndorsementNode> getHierarchy(String parentMrn, String parentVersion, String orgMrn, int maxDepth);
     Page<Endorsement> listByServiceMrns(List<String> serviceMrns, Pageable pageable);
+    List<EndorsementList> listByServiceReferences(List<ServiceReference> services);
+    EndorsementCursorPage listByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel, KeysetCursor cursor, int size);
+    EndorsementCursorPage listByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, KeysetCursor cursor, int size);
+    EndorsementCursorPage listByParentMrnAndParentVersion(String parentMrn, String parentVersion, KeysetCursor cursor, int size);
+    EndorsementCursorPage listByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn, KeysetCursor cursor, int size);
     Endorsement saveEndorsement(Endorsement endorsement);
-    void deleteEndorsement(Endorsement endorsement);
+    Endorsement upsertEndorsement(Endorsement endorsement);
+    void upsertEndorsements(List<Endorsement> endorsements);
+    boolean deleteEndorsement(String orgMrn, String serviceMrn, String serviceVersion);
+    int deleteByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, String orgMrn);
+    int deleteByOrgMrn(String orgMrn);
     Endorsement getByOrgMrnAndServiceMrnAndServiceVersion(String orgMrn, String serviceMrn, String serviceVersion);
+    long exportEndorsements(String orgMrn, String serviceMrn, Date updatedSince, Consumer<Endorsement> consumer);
+    EndorsementDelta getChangesSince(DeltaCursor cursor);
+    EndorsementVersion getVersionByOrgMrnAndServiceMrnAndServiceVersion(String orgMrn, String serviceMrn, String serviceVersion);
+    EndorsementVersion getVersionByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel);
+    EndorsementVersion getVersionByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion);
+    EndorsementVersion getVersionByParentMrnAndParentVersion(String parentMrn, String parentVersion);
+    EndorsementVersion getVersionByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn);
+    EndorsementVersion getHierarchyVersion(String parentMrn, String parentVersion, String orgMrn, int maxDepth);
+    ServiceVersionStats getServiceVersionStats(String serviceMrn, String serviceVersion);
+    OrgStats getOrgStats(String orgMrn);
 }
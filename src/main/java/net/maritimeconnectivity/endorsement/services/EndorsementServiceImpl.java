@@ -16,56 +16,565 @@
 
 package net.maritimeconnectivity.endorsement.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementCursorPage;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementDelta;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementEvent;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementList;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementNode;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.OrgStats;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.data.ServiceVersionStats;
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementCounter;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementCounterRepository;
 import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementTombstoneRepository;
+import net.maritimeconnectivity.endorsement.utils.DeltaCursor;
+import net.maritimeconnectivity.endorsement.utils.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class EndorsementServiceImpl implements EndorsementService {
     @Autowired
     private EndorsementRepository endorsementRepository;
 
+    @Autowired
+    private EndorsementTombstoneRepository endorsementTombstoneRepository;
+
+    @Autowired
+    private EndorsementCounterRepository endorsementCounterRepository;
+
+    @Autowired
+    private EndorsementCache endorsementCache;
+
+    @Autowired
+    private EndorsementEventFeed endorsementEventFeed;
+
+    @Autowired
+    private EndorsementExistenceFilter endorsementExistenceFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${endorsement.tombstones.retention-days:30}")
+    private long tombstoneRetentionDays;
+
+    @Value("${endorsement.delta.overlap-seconds:5}")
+    private long deltaOverlapSeconds;
+
+    @Value("${endorsement.delta.page-size:1000}")
+    private int deltaPageSize;
+
+    // Cache misses are loaded in one of these, so that they are served by the read replicas like the other reads
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Endorsement> listByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel, Pageable pageable) {
         return this.endorsementRepository.findByOrgMrnAndServiceLevel(orgMrn, serviceLevel, pageable);
     }
 
+    @Transactional(readOnly = true)
     public Page<Endorsement> listByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, Pageable pageable) {
         return this.endorsementRepository.findByServiceMrnAndServiceVersion(serviceMrn, serviceVersion, pageable);
     }
 
+    @Transactional(readOnly = true)
     public List<Endorsement> listByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion) {
         return this.endorsementRepository.findByServiceMrnAndServiceVersion(serviceMrn, serviceVersion);
     }
 
     @Transactional
     public Endorsement saveEndorsement(Endorsement endorsement) {
-        return this.endorsementRepository.save(endorsement);
+        this.endorsementCache.evict(endorsement.getOrgMrn(), endorsement.getServiceMrn());
+        recordReplacedVersions(countWrites(Collections.singletonList(endorsement)), new Date());
+        EndorsementEvent.Type type = endorsement.getId() == null ? EndorsementEvent.Type.CREATED : EndorsementEvent.Type.UPDATED;
+        Endorsement saved = this.endorsementRepository.save(endorsement);
+        this.endorsementExistenceFilter.add(saved);
+        this.endorsementEventFeed.publish(type, saved);
+        return saved;
+    }
+
+    /**
+     * Creates the endorsement or updates the existing one for the same org and service. The existing row is read and
+     * locked first, see {@link #countWrites}, and then written with a single upsert statement. The returned
+     * endorsement is the given one with the timestamps of the stored row, it is not re-read from the database. Whether
+     * it was created or updated follows from the locked row, it is counted in the endorsement.upserts metric, tagged
+     * created or updated, and published to {@link EndorsementEventFeed}. A replaced row of another service version is
+     * recorded as deleted, see {@link #recordReplacedVersions}.
+     */
+    @Transactional
+    public Endorsement upsertEndorsement(Endorsement endorsement) {
+        Date now = new Date();
+        endorsement.setCreatedAt(now);
+        endorsement.setUpdatedAt(now);
+        this.endorsementCache.evict(endorsement.getOrgMrn(), endorsement.getServiceMrn());
+        Map<Endorsement, Endorsement> replaced = countWrites(Collections.singletonList(endorsement));
+        recordReplacedVersions(replaced, now);
+        Endorsement previous = replaced.get(endorsement);
+        this.endorsementRepository.upsert(endorsement);
+        this.endorsementExistenceFilter.add(endorsement);
+        if (previous != null) {
+            // The upsert keeps the creation time of the row it updates
+            endorsement.setCreatedAt(previous.getCreatedAt());
+        }
+        this.meterRegistry.counter("endorsement.upserts", "result", previous == null ? "created" : "updated").increment();
+        this.endorsementEventFeed.publish(previous == null ? EndorsementEvent.Type.CREATED : EndorsementEvent.Type.UPDATED, endorsement);
+        return endorsement;
+    }
+
+    /**
+     * The batch statement does not tell which endorsements were inserted, so all of them are published to
+     * {@link EndorsementEventFeed} as updated. Replaced rows of other service versions are recorded as deleted, see
+     * {@link #recordReplacedVersions}.
+     */
+    @Transactional
+    public void upsertEndorsements(List<Endorsement> endorsements) {
+        Date now = new Date();
+        for (Endorsement endorsement : endorsements) {
+            endorsement.setCreatedAt(now);
+            endorsement.setUpdatedAt(now);
+            this.endorsementCache.evict(endorsement.getOrgMrn(), endorsement.getServiceMrn());
+        }
+        recordReplacedVersions(countWrites(endorsements), now);
+        this.endorsementRepository.upsertAll(endorsements);
+        for (Endorsement endorsement : endorsements) {
+            this.endorsementExistenceFilter.add(endorsement);
+            this.endorsementEventFeed.publish(EndorsementEvent.Type.UPDATED, endorsement);
+        }
+    }
+
+    /**
+     * Locks the row of the org and service with a read of its key columns, which gives the service level for the
+     * counters, then deletes the endorsement with a keyed DELETE and records a tombstone for it in the same
+     * transaction. The endorsement published to {@link EndorsementEventFeed} only has its key set.
+     *
+     * @return false if there was no such endorsement
+     */
+    @Transactional
+    public boolean deleteEndorsement(String orgMrn, String serviceMrn, String serviceVersion) {
+        this.endorsementCache.evict(orgMrn, serviceMrn);
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(orgMrn);
+        endorsement.setServiceMrn(serviceMrn);
+        endorsement.setServiceVersion(serviceVersion);
+        List<Endorsement> current = this.endorsementRepository.findKeysForUpdate(Collections.singleton(endorsement));
+        if (this.endorsementRepository.deleteByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion) == 0) {
+            return false;
+        }
+        countDeletes(current);
+        this.endorsementTombstoneRepository.save(new EndorsementTombstone(endorsement, new Date()));
+        this.endorsementEventFeed.publish(EndorsementEvent.Type.DELETED, endorsement);
+        return true;
+    }
+
+    /**
+     * Deletes the endorsements of the service version with set-based statements, see
+     * {@link EndorsementRepository#deleteAllMatching}.
+     *
+     * @param orgMrn only delete the endorsements made by this org, or null for all orgs
+     * @return the number of deleted endorsements
+     */
+    @Transactional
+    public int deleteByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, String orgMrn) {
+        return deleteAllMatching(orgMrn, serviceMrn, serviceVersion);
     }
 
+    /**
+     * Deletes all endorsements made by the org with set-based statements, see
+     * {@link EndorsementRepository#deleteAllMatching}.
+     *
+     * @return the number of deleted endorsements
+     */
     @Transactional
-    public void deleteEndorsement(Endorsement endorsement) {
-        this.endorsementRepository.delete(endorsement);
+    public int deleteByOrgMrn(String orgMrn) {
+        return deleteAllMatching(orgMrn, null, null);
+    }
+
+    private int deleteAllMatching(String orgMrn, String serviceMrn, String serviceVersion) {
+        List<Endorsement> deleted = this.endorsementRepository.deleteAllMatching(orgMrn, serviceMrn, serviceVersion, new Date());
+        countDeletes(deleted);
+        for (Endorsement endorsement : deleted) {
+            this.endorsementCache.evict(endorsement.getOrgMrn(), endorsement.getServiceMrn());
+            this.endorsementEventFeed.publish(EndorsementEvent.Type.DELETED, endorsement);
+        }
+        return deleted.size();
+    }
+
+    /**
+     * Moves the counters of the endorsements about to be written from the service version and level of their current
+     * rows, which are locked until the end of the transaction, to their new ones. Must be called before the write.
+     *
+     * @return the row each of the given endorsements replaces, by identity, which is the stored row or an earlier
+     * endorsement of the same org and service in the list. Endorsements that create a row have no entry.
+     */
+    private Map<Endorsement, Endorsement> countWrites(List<Endorsement> endorsements) {
+        Map<List<String>, Endorsement> current = new HashMap<>();
+        for (Endorsement endorsement : this.endorsementRepository.findKeysForUpdate(endorsements)) {
+            current.put(rowKey(endorsement), endorsement);
+        }
+        Map<Endorsement, Endorsement> replaced = new IdentityHashMap<>();
+        SortedMap<EndorsementCounter.Key, Long> deltas = new TreeMap<>();
+        for (Endorsement endorsement : endorsements) {
+            // A later endorsement of the same org and service in the list replaces this one
+            Endorsement previous = current.put(rowKey(endorsement), endorsement);
+            if (previous != null) {
+                replaced.put(endorsement, previous);
+                addDelta(deltas, previous, -1);
+            }
+            addDelta(deltas, endorsement, 1);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        this.endorsementCounterRepository.adjust(deltas);
+        return replaced;
     }
 
+    /**
+     * An org has one row per service, so writing another version of the service replaces the row of the version it
+     * endorsed before. Delta and event clients know the endorsements by their service version, so a tombstone is
+     * recorded and a deletion published for every replaced version, in the transaction of the write.
+     */
+    private void recordReplacedVersions(Map<Endorsement, Endorsement> replaced, Date deletedAt) {
+        List<EndorsementTombstone> tombstones = new ArrayList<>();
+        for (Map.Entry<Endorsement, Endorsement> entry : replaced.entrySet()) {
+            Endorsement previous = entry.getValue();
+            if (!Objects.equals(previous.getServiceVersion(), entry.getKey().getServiceVersion())) {
+                tombstones.add(new EndorsementTombstone(previous, deletedAt));
+                this.endorsementEventFeed.publish(EndorsementEvent.Type.DELETED, previous);
+            }
+        }
+        if (!tombstones.isEmpty()) {
+            this.endorsementTombstoneRepository.saveAll(tombstones);
+        }
+    }
+
+    // The unique key of the endorsements table, compared case-insensitively like the database does
+    private static List<String> rowKey(Endorsement endorsement) {
+        return Arrays.asList(endorsement.getOrgMrn().toLowerCase(Locale.ROOT), endorsement.getServiceMrn().toLowerCase(Locale.ROOT));
+    }
+
+    private void countDeletes(List<Endorsement> deleted) {
+        SortedMap<EndorsementCounter.Key, Long> deltas = new TreeMap<>();
+        for (Endorsement endorsement : deleted) {
+            addDelta(deltas, endorsement, -1);
+        }
+        this.endorsementCounterRepository.adjust(deltas);
+    }
+
+    private static void addDelta(Map<EndorsementCounter.Key, Long> deltas, Endorsement endorsement, long delta) {
+        deltas.merge(EndorsementCounter.Key.serviceVersion(endorsement), delta, Long::sum);
+        deltas.merge(EndorsementCounter.Key.orgLevel(endorsement), delta, Long::sum);
+    }
+
+    /**
+     * Endorsements that {@link EndorsementExistenceFilter} rules out are not looked up at all, the others are served
+     * from {@link EndorsementCache}. The cache holds the single row of the org and service, so it is only returned if
+     * it is for the requested version, compared case-insensitively like the database does. Cache hits do not start a
+     * transaction.
+     */
     public Endorsement getByOrgMrnAndServiceMrnAndServiceVersion(String orgMrn, String serviceMrn, String serviceVersion) {
-        return this.endorsementRepository.findByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
+        // Checked first, a filter built after it might answer the lookup but is not counted
+        boolean filtered = this.endorsementExistenceFilter.isBuilt();
+        if (!this.endorsementExistenceFilter.mightExist(orgMrn, serviceMrn, serviceVersion)) {
+            return null;
+        }
+        Optional<Endorsement> endorsement = this.endorsementCache.get(orgMrn, serviceMrn,
+                key -> this.readOnlyTransaction.execute(status -> Optional.ofNullable(this.endorsementRepository.findByOrgMrnAndServiceMrn(orgMrn, serviceMrn))));
+        Endorsement found = endorsement.filter(e -> serviceVersion.equalsIgnoreCase(e.getServiceVersion())).orElse(null);
+        if (found == null && filtered) {
+            this.endorsementExistenceFilter.recordFalsePositive();
+        }
+        return found;
+    }
+
+    /**
+     * Streams the matching endorsements to the consumer within a single read-only transaction, see
+     * {@link EndorsementRepository#scroll}.
+     */
+    @Transactional(readOnly = true)
+    public long exportEndorsements(String orgMrn, String serviceMrn, Date updatedSince, Consumer<Endorsement> consumer) {
+        return this.endorsementRepository.scroll(orgMrn, serviceMrn, updatedSince, consumer);
     }
 
+    /**
+     * Returns the next page of the endorsements updated and the tombstones of the endorsements deleted after the
+     * cursor, or null when the cursor is older than the tombstone retention, in which case deletions may have been
+     * compacted away. A page holds at most endorsement.delta.page-size changes, taken from the two in time order, with
+     * the deletions first among changes made at the same time.
+     * <p>
+     * The watermark returned with the last page lags the time of the read by a few seconds, so the changes of
+     * transactions that were still running are picked up by the next delta, at the cost of returning the most recent
+     * changes twice.
+     */
+    @Transactional(readOnly = true)
+    public EndorsementDelta getChangesSince(DeltaCursor cursor) {
+        long now = System.currentTimeMillis();
+        if (cursor.getChangedAt().getTime() < now - TimeUnit.DAYS.toMillis(this.tombstoneRetentionDays)) {
+            return null;
+        }
+        Pageable limit = PageRequest.of(0, this.deltaPageSize + 1);
+        List<Endorsement> endorsements = this.endorsementRepository.findByUpdatedAtAfter(cursor.getChangedAt(), cursor.getEndorsementId(), limit);
+        List<EndorsementTombstone> tombstones = this.endorsementTombstoneRepository.findByDeletedAtAfter(cursor.getChangedAt(), cursor.getTombstoneId(), limit);
+
+        // Merges the two by time until the page is full
+        int endorsementCount = 0;
+        int tombstoneCount = 0;
+        while (endorsementCount + tombstoneCount < this.deltaPageSize) {
+            boolean moreEndorsements = endorsementCount < endorsements.size();
+            boolean moreTombstones = tombstoneCount < tombstones.size();
+            if (moreEndorsements && (!moreTombstones || endorsements.get(endorsementCount).getUpdatedAt().getTime()
+                    < tombstones.get(tombstoneCount).getDeletedAt().getTime())) {
+                endorsementCount++;
+            } else if (moreTombstones) {
+                tombstoneCount++;
+            } else {
+                break;
+            }
+        }
+        EndorsementDelta delta = new EndorsementDelta();
+        delta.setEndorsements(endorsements.subList(0, endorsementCount));
+        delta.setDeleted(tombstones.subList(0, tombstoneCount));
+
+        Endorsement lastEndorsement = endorsementCount > 0 ? endorsements.get(endorsementCount - 1) : null;
+        EndorsementTombstone lastTombstone = tombstoneCount > 0 ? tombstones.get(tombstoneCount - 1) : null;
+        long changedAt = cursor.getChangedAt().getTime();
+        if (lastEndorsement != null) {
+            changedAt = Math.max(changedAt, lastEndorsement.getUpdatedAt().getTime());
+        }
+        if (lastTombstone != null) {
+            changedAt = Math.max(changedAt, lastTombstone.getDeletedAt().getTime());
+        }
+        if (endorsementCount < endorsements.size() || tombstoneCount < tombstones.size()) {
+            // The rows at exactly the time of the last change that have not been returned have higher ids than the
+            // last returned ones, or than those of the cursor when the time has not moved
+            boolean sameTime = changedAt == cursor.getChangedAt().getTime();
+            long endorsementId = lastEndorsement != null && lastEndorsement.getUpdatedAt().getTime() == changedAt
+                    ? lastEndorsement.getId() : sameTime ? cursor.getEndorsementId() : 0;
+            long tombstoneId = lastTombstone != null && lastTombstone.getDeletedAt().getTime() == changedAt
+                    ? lastTombstone.getId() : sameTime ? cursor.getTombstoneId() : 0;
+            delta.setNextCursor(new DeltaCursor(new Date(changedAt), endorsementId, tombstoneId).encode());
+            delta.setWatermark(new Date(changedAt));
+        } else {
+            delta.setWatermark(new Date(Math.max(changedAt, now - TimeUnit.SECONDS.toMillis(this.deltaOverlapSeconds))));
+        }
+        return delta;
+    }
+
+    @Transactional(readOnly = true)
     public Page<Endorsement> listByParentMrnAndParentVersion(String parentMrn, String parentVersion, Pageable pageable) {
         return this.endorsementRepository.findByParentMrnAndParentVersion(parentMrn, parentVersion, pageable);
     }
 
+    @Transactional(readOnly = true)
     public Page<Endorsement> listByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn, Pageable pageable) {
         return this.endorsementRepository.findByParentMrnAndParentVersionAndOrgMrn(parentMrn, parentVersion, orgMrn, pageable);
     }
 
+    /**
+     * Builds the tree of service versions under the given parent from a single query. The endorsements come ordered
+     * by depth, so the node of the parent of an endorsed service version has always been created before it.
+     */
+    @Transactional(readOnly = true)
+    public List<EndorsementNode> getHierarchy(String parentMrn, String parentVersion, String orgMrn, int maxDepth) {
+        List<EndorsementNode> roots = new ArrayList<>();
+        Map<ServiceReference, EndorsementNode> nodes = new HashMap<>();
+        for (Endorsement endorsement : this.endorsementRepository.findHierarchy(parentMrn, parentVersion, orgMrn, maxDepth)) {
+            ServiceReference key = new ServiceReference();
+            key.setServiceMrn(endorsement.getServiceMrn());
+            key.setServiceVersion(endorsement.getServiceVersion());
+            EndorsementNode node = nodes.get(key);
+            if (node == null) {
+                node = new EndorsementNode();
+                node.setServiceMrn(endorsement.getServiceMrn());
+                node.setServiceVersion(endorsement.getServiceVersion());
+                node.setServiceLevel(endorsement.getServiceLevel());
+                nodes.put(key, node);
+                ServiceReference parentKey = new ServiceReference();
+                parentKey.setServiceMrn(endorsement.getParentMrn());
+                parentKey.setServiceVersion(endorsement.getParentVersion());
+                EndorsementNode parent = nodes.get(parentKey);
+                (parent != null ? parent.getChildren() : roots).add(node);
+            }
+            node.getEndorsements().add(endorsement);
+        }
+        return roots;
+    }
+
+    @Transactional(readOnly = true)
     public Page<Endorsement> listByServiceMrns(List<String> serviceMrns, Pageable pageable) {
         return this.endorsementRepository.findByServiceMrnIn(serviceMrns, pageable);
     }
+
+    /**
+     * Looks up the endorsements of several service versions with one query per chunk of service versions, see
+     * {@link EndorsementRepository#findByServiceReferences}, which only selects the requested (service_mrn,
+     * service_version) pairs through their index. The result has one entry per distinct requested service version,
+     * in request order.
+     */
+    @Transactional(readOnly = true)
+    public List<EndorsementList> listByServiceReferences(List<ServiceReference> services) {
+        Map<ServiceReference, EndorsementList> grouped = new LinkedHashMap<>();
+        for (ServiceReference service : services) {
+            EndorsementList endorsementList = new EndorsementList();
+            endorsementList.setServiceMrn(service.getServiceMrn());
+            endorsementList.setServiceVersion(service.getServiceVersion());
+            endorsementList.setEndorsements(new ArrayList<>());
+            grouped.putIfAbsent(service, endorsementList);
+        }
+        if (grouped.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ServiceReference key = new ServiceReference();
+        for (Endorsement endorsement : this.endorsementRepository.findByServiceReferences(grouped.keySet())) {
+            key.setServiceMrn(endorsement.getServiceMrn());
+            key.setServiceVersion(endorsement.getServiceVersion());
+            EndorsementList endorsementList = grouped.get(key);
+            if (endorsementList != null) {
+                endorsementList.getEndorsements().add(endorsement);
+            }
+        }
+        return new ArrayList<>(grouped.values());
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementCursorPage listByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel, KeysetCursor cursor, int size) {
+        return toCursorPage(this.endorsementRepository.findByOrgMrnAndServiceLevelAfter(orgMrn, serviceLevel, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, size + 1)), size);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementCursorPage listByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion, KeysetCursor cursor, int size) {
+        return toCursorPage(this.endorsementRepository.findByServiceMrnAndServiceVersionAfter(serviceMrn, serviceVersion, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, size + 1)), size);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementCursorPage listByParentMrnAndParentVersion(String parentMrn, String parentVersion, KeysetCursor cursor, int size) {
+        return toCursorPage(this.endorsementRepository.findByParentMrnAndParentVersionAfter(parentMrn, parentVersion, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, size + 1)), size);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementCursorPage listByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn, KeysetCursor cursor, int size) {
+        return toCursorPage(this.endorsementRepository.findByParentMrnAndParentVersionAndOrgMrnAfter(parentMrn, parentVersion, orgMrn, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, size + 1)), size);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementVersion getVersionByOrgMrnAndServiceLevel(String orgMrn, String serviceLevel) {
+        return this.endorsementRepository.findVersionByOrgMrnAndServiceLevel(orgMrn, serviceLevel);
+    }
+
+    /**
+     * Reads the version of a single endorsement without loading it, so conditional requests can be answered before
+     * the endorsement is. Endorsements the existence filter rules out get a count of 0 without a query.
+     */
+    @Transactional(readOnly = true)
+    public EndorsementVersion getVersionByOrgMrnAndServiceMrnAndServiceVersion(String orgMrn, String serviceMrn, String serviceVersion) {
+        boolean filtered = this.endorsementExistenceFilter.isBuilt();
+        if (!this.endorsementExistenceFilter.mightExist(orgMrn, serviceMrn, serviceVersion)) {
+            return new EndorsementVersion(0, null);
+        }
+        EndorsementVersion version = this.endorsementRepository.findVersionByOrgMrnAndServiceMrnAndServiceVersion(orgMrn, serviceMrn, serviceVersion);
+        if (version.getCount() == 0 && filtered) {
+            this.endorsementExistenceFilter.recordFalsePositive();
+        }
+        return version;
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementVersion getVersionByServiceMrnAndServiceVersion(String serviceMrn, String serviceVersion) {
+        return this.endorsementRepository.findVersionByServiceMrnAndServiceVersion(serviceMrn, serviceVersion);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementVersion getVersionByParentMrnAndParentVersion(String parentMrn, String parentVersion) {
+        return this.endorsementRepository.findVersionByParentMrnAndParentVersion(parentMrn, parentVersion);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementVersion getVersionByParentMrnAndOrgMrn(String parentMrn, String parentVersion, String orgMrn) {
+        return this.endorsementRepository.findVersionByParentMrnAndParentVersionAndOrgMrn(parentMrn, parentVersion, orgMrn);
+    }
+
+    @Transactional(readOnly = true)
+    public EndorsementVersion getHierarchyVersion(String parentMrn, String parentVersion, String orgMrn, int maxDepth) {
+        return this.endorsementRepository.findHierarchyVersion(parentMrn, parentVersion, orgMrn, maxDepth);
+    }
+
+    /**
+     * Reads the counter of the service version, see {@link EndorsementCounter}.
+     */
+    @Transactional(readOnly = true)
+    public ServiceVersionStats getServiceVersionStats(String serviceMrn, String serviceVersion) {
+        ServiceVersionStats stats = new ServiceVersionStats();
+        stats.setServiceMrn(serviceMrn);
+        stats.setServiceVersion(serviceVersion);
+        stats.setEndorsements(this.endorsementCounterRepository.findById(new EndorsementCounter.Key(EndorsementCounter.Type.SERVICE_VERSION, serviceMrn, serviceVersion))
+                .map(EndorsementCounter::getEndorsements)
+                .orElse(0L));
+        return stats;
+    }
+
+    /**
+     * Reads the counters of the org, one per service level, see {@link EndorsementCounter}.
+     */
+    @Transactional(readOnly = true)
+    public OrgStats getOrgStats(String orgMrn) {
+        Map<String, Long> byServiceLevel = new TreeMap<>();
+        long total = 0;
+        for (EndorsementCounter counter : this.endorsementCounterRepository.findByCounterTypeAndMrn(EndorsementCounter.Type.ORG_LEVEL, orgMrn)) {
+            if (counter.getEndorsements() > 0) {
+                byServiceLevel.put(counter.getQualifier(), counter.getEndorsements());
+                total += counter.getEndorsements();
+            }
+        }
+        OrgStats stats = new OrgStats();
+        stats.setOrgMrn(orgMrn);
+        stats.setEndorsements(total);
+        stats.setEndorsementsByServiceLevel(byServiceLevel);
+        return stats;
+    }
+
+    /**
+     * The finders are asked for one row more than the page size, that extra row only tells whether there is a next page.
+     */
+    private EndorsementCursorPage toCursorPage(List<Endorsement> rows, int size) {
+        EndorsementCursorPage page = new EndorsementCursorPage();
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            page.setNextCursor(KeysetCursor.after(rows.get(size - 1)).encode());
+        }
+        page.setContent(rows);
+        return page;
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementTombstoneRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically deletes the tombstones that are older than the retention. Delta syncs from before the retention are
+ * refused, see {@link EndorsementService#getChangesSince}.
+ */
+@Component
+@Slf4j
+public class EndorsementTombstoneCompactor {
+
+    @Autowired
+    private EndorsementTombstoneRepository endorsementTombstoneRepository;
+
+    @Value("${endorsement.tombstones.retention-days:30}")
+    private long retentionDays;
+
+    @Scheduled(fixedDelayString = "${endorsement.tombstones.compaction-interval-ms:3600000}")
+    @Transactional
+    public void compact() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        int deleted = endorsementTombstoneRepository.deleteByDeletedAtBefore(before);
+        log.debug("Compacted {} endorsement tombstones from before {}", deleted, before);
+    }
+}
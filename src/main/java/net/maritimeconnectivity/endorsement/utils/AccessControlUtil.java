@@ -16,14 +16,18 @@
 
 package net.maritimeconnectivity.endorsement.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.KeycloakSecurityContext;
 import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.keycloak.representations.AccessToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component("accessControlUtil")
 @Slf4j
@@ -32,55 +36,87 @@ public class AccessControlUtil {
     public static final String ORG_PROPERTY_NAME = "org";
     public static final String PERMISSIONS_PROPERTY_NAME = "permissions";
 
+    private static final long MAX_CACHE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    // Parsed claims keyed by token id, kept until the token expires but never longer than MAX_CACHE_NANOS
+    private static final Cache<String, ParsedPrincipal> PRINCIPALS = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfter(new Expiry<String, ParsedPrincipal>() {
+                @Override
+                public long expireAfterCreate(String key, ParsedPrincipal value, long currentTime) {
+                    if (value.getExpiresAt() == 0) {
+                        return MAX_CACHE_NANOS;
+                    }
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(value.getExpiresAt() - System.currentTimeMillis());
+                    return Math.max(0, Math.min(remaining, MAX_CACHE_NANOS));
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, ParsedPrincipal value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String key, ParsedPrincipal value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
     public static boolean hasAccessToOrg(String orgMrn) {
         if (orgMrn == null || orgMrn.trim().isEmpty()) {
             log.debug("The orgMrn was empty!");
             return false;
         }
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        ParsedPrincipal principal = currentPrincipal();
+        if (principal == null) {
+            return false;
+        }
         // Check if the user is part of the organization
-        if (auth instanceof KeycloakAuthenticationToken) {
-            log.debug("OIDC authentication in process");
-            // Keycloak authentication
-            KeycloakAuthenticationToken kat = (KeycloakAuthenticationToken) auth;
-            KeycloakSecurityContext ksc = (KeycloakSecurityContext) kat.getCredentials();
-            Map<String, Object> otherClaims = ksc.getToken().getOtherClaims();
-            if (otherClaims.containsKey(AccessControlUtil.ORG_PROPERTY_NAME) &&
-                    ((String) otherClaims.get(AccessControlUtil.ORG_PROPERTY_NAME)).equalsIgnoreCase(orgMrn)) {
-                log.debug("Entity from org: " + otherClaims.get(AccessControlUtil.ORG_PROPERTY_NAME) + " is in " + orgMrn);
-                return true;
-            }
-            log.debug("Entity from org: " + otherClaims.get(AccessControlUtil.ORG_PROPERTY_NAME) + " is not in " + orgMrn);
-        } else {
-            if (auth != null) {
-                log.debug("Unknown authentication method: " + auth.getClass());
-            }
+        boolean inOrg = principal.isInOrg(orgMrn);
+        if (log.isDebugEnabled()) {
+            log.debug("Entity from org: {} is {}in {}", principal.getOrgMrn(), inOrg ? "" : "not ", orgMrn);
         }
-        return false;
+        return inOrg;
     }
 
     public static boolean hasPermission(String permission) {
+        ParsedPrincipal principal = currentPrincipal();
+        return principal != null && principal.hasPermission(permission);
+    }
+
+    /**
+     * Returns the org of the current request as given in the access token, or null if there is none.
+     */
+    public static String currentOrgMrn() {
+        ParsedPrincipal principal = currentPrincipal();
+        return principal != null ? principal.getOrgMrn() : null;
+    }
+
+    /**
+     * Returns the parsed claims of the access token of the current request, or null if the request was not
+     * authenticated with OIDC. Tokens without an id are keyed on the raw token string instead.
+     */
+    private static ParsedPrincipal currentPrincipal() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth instanceof KeycloakAuthenticationToken) {
-            log.debug("OIDC permission lookup");
             // Keycloak authentication
-            KeycloakAuthenticationToken kat = (KeycloakAuthenticationToken) auth;
-            KeycloakSecurityContext ksc = (KeycloakSecurityContext) kat.getCredentials();
-            Map<String, Object> otherClaims = ksc.getToken().getOtherClaims();
-            if (otherClaims.containsKey(AccessControlUtil.PERMISSIONS_PROPERTY_NAME)) {
-                String usersPermissions = (String) otherClaims.get(AccessControlUtil.PERMISSIONS_PROPERTY_NAME);
-                String[] permissionList = usersPermissions.split(",");
-                for (String per : permissionList) {
-                    if (per.equalsIgnoreCase(permission)) {
-                        return true;
-                    }
-                }
+            KeycloakSecurityContext ksc = (KeycloakSecurityContext) auth.getCredentials();
+            AccessToken token = ksc.getToken();
+            String key = token.getId() != null ? token.getId() : ksc.getTokenString();
+            if (key == null) {
+                return ParsedPrincipal.of(token);
             }
-        } else {
-            if (auth != null) {
-                log.debug("Unknown authentication method: " + auth.getClass());
+            ParsedPrincipal principal = PRINCIPALS.getIfPresent(key);
+            if (principal == null) {
+                principal = ParsedPrincipal.of(token);
+                PRINCIPALS.put(key, principal);
             }
+            return principal;
+        }
+        if (auth != null) {
+            log.debug("Unknown authentication method: {}", auth.getClass());
         }
-        return false;
+        return null;
     }
 }
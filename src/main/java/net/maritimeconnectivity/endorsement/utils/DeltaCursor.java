@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in the changes returned by delta syncs, which are the endorsements ordered by (updated_at, id) merged
+ * with the tombstones ordered by (deleted_at, id). The position is a time and, for each of the two, the id of the
+ * last row at exactly that time that has been returned. It is passed to clients as an opaque continuation token.
+ */
+@Getter
+public class DeltaCursor {
+
+    private final Date changedAt;
+    private final long endorsementId;
+    private final long tombstoneId;
+
+    public DeltaCursor(Date changedAt, long endorsementId, long tombstoneId) {
+        this.changedAt = changedAt;
+        this.endorsementId = endorsementId;
+        this.tombstoneId = tombstoneId;
+    }
+
+    /**
+     * @return a cursor positioned before the changes made at or after the given time
+     */
+    public static DeltaCursor since(Date since) {
+        return new DeltaCursor(since, 0, 0);
+    }
+
+    /**
+     * Parses a token created by {@link #encode()}.
+     */
+    public static DeltaCursor decode(String token) {
+        try {
+            String[] values = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (values.length != 3) {
+                throw new IllegalArgumentException();
+            }
+            return new DeltaCursor(new Date(Long.parseLong(values[0])), Long.parseLong(values[1]), Long.parseLong(values[2]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor is not valid");
+        }
+    }
+
+    public String encode() {
+        String value = changedAt.getTime() + ":" + endorsementId + ":" + tombstoneId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
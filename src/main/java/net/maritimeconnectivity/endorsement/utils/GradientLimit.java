@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that adapts to the observed latency. The latencies are averaged over short windows, and each
+ * window is compared to a slowly moving average of the earlier ones: while the window is within the tolerance of
+ * that average the limit grows by its square root, and when latency goes up the limit is cut by the same gradient,
+ * down to half of it per window. Windows in which less than half of the limit was in use do not change the limit,
+ * since they say nothing about whether more concurrency would help.
+ * <p>
+ * Samples are recorded without locking; the thread that closes a window does the update.
+ */
+public class GradientLimit {
+
+    // Weight of a window in the long term average latency
+    private static final double LONG_RTT_WEIGHT = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minWindowSamples;
+
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final AtomicLong windowStart;
+
+    private volatile double limit;
+    private double longRtt;
+
+    /**
+     * @param initialLimit the limit until the first window has been measured
+     * @param minLimit the lowest the limit can go
+     * @param maxLimit the highest the limit can go
+     * @param tolerance how many times the long term average latency a window may take before the limit is cut
+     * @param smoothing how much of the change computed for a window is applied, between 0 and 1
+     * @param windowNanos the minimum duration of a window
+     * @param minWindowSamples the minimum number of samples in a window
+     * @param nowNanos the current time in nanoseconds, as given by System.nanoTime()
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                         long windowNanos, int minWindowSamples, long nowNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = windowNanos;
+        this.minWindowSamples = minWindowSamples;
+        this.windowStart = new AtomicLong(nowNanos);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Records the latency of a finished request.
+     *
+     * @param rttNanos how long the request took
+     * @param inFlight the number of requests in flight when it started, itself included
+     * @param nowNanos the current time in nanoseconds, as given by System.nanoTime()
+     */
+    public void onSample(long rttNanos, int inFlight, long nowNanos) {
+        windowRttSum.add(rttNanos);
+        windowSamples.increment();
+        windowMaxInFlight.accumulateAndGet(inFlight, Math::max);
+        long start = windowStart.get();
+        if (nowNanos - start < windowNanos || windowSamples.sum() < minWindowSamples || !windowStart.compareAndSet(start, nowNanos)) {
+            return;
+        }
+        // Samples recorded while the window is being reset may end up in either window, which does not matter
+        long samples = windowSamples.sumThenReset();
+        long rttSum = windowRttSum.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(0);
+        if (samples > 0) {
+            update((double) rttSum / samples, maxInFlight);
+        }
+    }
+
+    private synchronized void update(double shortRtt, int maxInFlight) {
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt = longRtt * (1 - LONG_RTT_WEIGHT) + shortRtt * LONG_RTT_WEIGHT;
+        }
+        if (maxInFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
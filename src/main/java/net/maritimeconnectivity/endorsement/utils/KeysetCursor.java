@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import lombok.Getter;
+import net.maritimeconnectivity.endorsement.model.db.TimestampModel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in a listing ordered by (created_at, id), passed to clients as an opaque continuation token.
+ */
+@Getter
+public class KeysetCursor {
+
+    private static final KeysetCursor FIRST = new KeysetCursor(new Date(0), 0L);
+
+    private final Date createdAt;
+    private final Long id;
+
+    private KeysetCursor(Date createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    /**
+     * @return a cursor positioned before the first row
+     */
+    public static KeysetCursor first() {
+        return FIRST;
+    }
+
+    /**
+     * @return a cursor positioned right after the given row
+     */
+    public static KeysetCursor after(TimestampModel row) {
+        return new KeysetCursor(row.getCreatedAt(), row.getId());
+    }
+
+    /**
+     * Parses a token created by {@link #encode()}. An empty token means the first page.
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            return new KeysetCursor(new Date(Long.parseLong(value.substring(0, separator))), Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursor is not valid");
+        }
+    }
+
+    public String encode() {
+        String value = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
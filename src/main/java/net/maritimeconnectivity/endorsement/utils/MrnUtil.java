@@ -27,24 +27,137 @@ public class MrnUtil {
         // empty so it cannot be instantiated
     }
 
+    // The MRN syntax as regular expressions. Validation is done by parseMrn, which accepts the same MRNs in one pass.
     public static final Pattern MRN_PATTERN = Pattern.compile("^urn:mrn:mcp:(device|org|user|vessel|service|mms):([a-z0-9]([a-z0-9]|-){0,20}[a-z0-9]):((([-._a-z0-9]|~)|%[0-9a-f][0-9a-f]|([!$&'()*+,;=])|:|@)((([-._a-z0-9]|~)|%[0-9a-f][0-9a-f]|([!$&'()*+,;=])|:|@)|/)*)$", Pattern.CASE_INSENSITIVE);
     public static final Pattern MRN_SERVICE_PATTERN = Pattern.compile("^urn:mrn:mcp:service:([a-z0-9]([a-z0-9]|-){0,20}[a-z0-9]):((([-._a-z0-9]|~)|%[0-9a-f][0-9a-f]|([!$&'()*+,;=])|:|@)((([-._a-z0-9]|~)|%[0-9a-f][0-9a-f]|([!$&'()*+,;=])|:|@)|/)*)$", Pattern.CASE_INSENSITIVE);
 
+    private static final String PREFIX = "urn:mrn:mcp:";
+    private static final int MIN_IDP_LENGTH = 2;
+    private static final int MAX_IDP_LENGTH = 22;
+    // Index of the service level among the ':' separated parts of a service MRN
+    private static final int SERVICE_LEVEL_PART = 6;
+    private static final String[] SERVICE_LEVELS = {"specification", "design", "instance"};
+
+    // pchar from RFC 3986 apart from pct-encoded, which is handled separately
+    private static final boolean[] PCHAR = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            PCHAR[c] = true;
+            PCHAR[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            PCHAR[c] = true;
+        }
+        for (char c : "-._~!$&'()*+,;=:@".toCharArray()) {
+            PCHAR[c] = true;
+        }
+    }
+
     public static boolean validateMrn(String mrn) {
+        parseMrn(mrn);
+        return true;
+    }
+
+    /**
+     * Parses and validates an MRN in a single pass. It accepts the same MRNs as {@link #MRN_PATTERN}, and for service
+     * MRNs it also requires a service level (specification, design or instance) followed by at least one more part.
+     *
+     * @param mrn the MRN to parse
+     * @return the parsed MRN
+     * @throws IllegalArgumentException if the MRN is not valid
+     */
+    public static ParsedMrn parseMrn(String mrn) {
         if (mrn == null || mrn.trim().isEmpty()) {
             throw new IllegalArgumentException("MRN is empty");
         }
-        if (!MRN_PATTERN.matcher(mrn).matches()) {
-            throw new IllegalArgumentException("MRN is not in a valid format");
+        int length = mrn.length();
+        if (!mrn.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            throw invalidMrn();
+        }
+
+        int typeStart = PREFIX.length();
+        int typeEnd = mrn.indexOf(':', typeStart);
+        ParsedMrn.EntityType entityType = typeEnd < 0 ? null : ParsedMrn.EntityType.match(mrn, typeStart, typeEnd);
+        if (entityType == null) {
+            throw invalidMrn();
         }
-        // validate mrn based on the entity type
-        String[] parts = mrn.split(":");
-        if (parts[3].equals("service")) {
-            Pattern serviceTypes = Pattern.compile("^(specification|design|instance)$", Pattern.CASE_INSENSITIVE);
-            if (!MRN_SERVICE_PATTERN.matcher(mrn).matches() || parts.length < 8 || !serviceTypes.matcher(parts[6]).matches()) {
-                throw new IllegalArgumentException("MRN is not in a valid format for a service");
+
+        int idpStart = typeEnd + 1;
+        int idpEnd = idpStart;
+        while (idpEnd < length && mrn.charAt(idpEnd) != ':') {
+            char c = mrn.charAt(idpEnd);
+            if (!isAlphanumeric(c) && c != '-') {
+                throw invalidMrn();
             }
+            idpEnd++;
         }
-        return true;
+        int idpLength = idpEnd - idpStart;
+        if (idpEnd == length || idpLength < MIN_IDP_LENGTH || idpLength > MAX_IDP_LENGTH
+                || mrn.charAt(idpStart) == '-' || mrn.charAt(idpEnd - 1) == '-') {
+            throw invalidMrn();
+        }
+
+        // The namespace specific string is a non-empty sequence of pchar and '/' that does not start with '/'
+        int nssStart = idpEnd + 1;
+        if (nssStart == length || mrn.charAt(nssStart) == '/') {
+            throw invalidMrn();
+        }
+        boolean service = entityType == ParsedMrn.EntityType.SERVICE;
+        int part = SERVICE_LEVEL_PART - 1;
+        int serviceLevelStart = -1;
+        int serviceLevelEnd = -1;
+        boolean hasPartAfterServiceLevel = false;
+        int i = nssStart;
+        while (i < length) {
+            char c = mrn.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= length || !isHexDigit(mrn.charAt(i + 1)) || !isHexDigit(mrn.charAt(i + 2))) {
+                    throw invalidMrn();
+                }
+            } else if (c != '/' && (c >= PCHAR.length || !PCHAR[c])) {
+                throw invalidMrn();
+            }
+            if (c == ':') {
+                part++;
+                if (part == SERVICE_LEVEL_PART) {
+                    serviceLevelStart = i + 1;
+                } else if (part == SERVICE_LEVEL_PART + 1) {
+                    serviceLevelEnd = i;
+                }
+            } else if (part > SERVICE_LEVEL_PART) {
+                hasPartAfterServiceLevel = true;
+            }
+            i += c == '%' ? 3 : 1;
+        }
+
+        if (!service) {
+            return new ParsedMrn(mrn, entityType, idpStart, idpEnd, nssStart, -1, -1);
+        }
+        if (!hasPartAfterServiceLevel || !isServiceLevel(mrn, serviceLevelStart, serviceLevelEnd)) {
+            throw new IllegalArgumentException("MRN is not in a valid format for a service");
+        }
+        return new ParsedMrn(mrn, entityType, idpStart, idpEnd, nssStart, serviceLevelStart, serviceLevelEnd);
+    }
+
+    private static boolean isServiceLevel(String mrn, int start, int end) {
+        for (String level : SERVICE_LEVELS) {
+            if (level.length() == end - start && mrn.regionMatches(true, start, level, 0, end - start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static IllegalArgumentException invalidMrn() {
+        return new IllegalArgumentException("MRN is not in a valid format");
     }
 }
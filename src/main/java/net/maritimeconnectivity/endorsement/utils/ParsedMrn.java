@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+/**
+ * The result of parsing an MRN with {@link MrnUtil#parseMrn(String)}. Only offsets into the original string are kept,
+ * the segments are extracted when they are asked for.
+ */
+public final class ParsedMrn {
+
+    public enum EntityType {
+        DEVICE, ORG, USER, VESSEL, SERVICE, MMS;
+
+        private static final EntityType[] VALUES = values();
+
+        private final String lowerCaseName = name().toLowerCase();
+
+        /**
+         * @return the entity type spelled (case-insensitively) by mrn[start, end), or null if there is none
+         */
+        static EntityType match(String mrn, int start, int end) {
+            for (EntityType type : VALUES) {
+                if (type.lowerCaseName.length() == end - start && mrn.regionMatches(true, start, type.lowerCaseName, 0, end - start)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String mrn;
+    private final EntityType entityType;
+    private final int idpStart;
+    private final int idpEnd;
+    private final int nssStart;
+    private final int serviceLevelStart;
+    private final int serviceLevelEnd;
+
+    ParsedMrn(String mrn, EntityType entityType, int idpStart, int idpEnd, int nssStart, int serviceLevelStart, int serviceLevelEnd) {
+        this.mrn = mrn;
+        this.entityType = entityType;
+        this.idpStart = idpStart;
+        this.idpEnd = idpEnd;
+        this.nssStart = nssStart;
+        this.serviceLevelStart = serviceLevelStart;
+        this.serviceLevelEnd = serviceLevelEnd;
+    }
+
+    public String getMrn() {
+        return mrn;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public String getIdp() {
+        return mrn.substring(idpStart, idpEnd);
+    }
+
+    /**
+     * @return the service level (specification, design or instance) of a service MRN, otherwise null
+     */
+    public String getServiceLevel() {
+        return serviceLevelStart < 0 ? null : mrn.substring(serviceLevelStart, serviceLevelEnd);
+    }
+
+    public int getIdpStart() {
+        return idpStart;
+    }
+
+    public int getIdpEnd() {
+        return idpEnd;
+    }
+
+    /**
+     * @return the offset of the namespace specific string, the part after the IDP
+     */
+    public int getNssStart() {
+        return nssStart;
+    }
+
+    /**
+     * @return the offset of the service level, or -1 if this is not a service MRN
+     */
+    public int getServiceLevelStart() {
+        return serviceLevelStart;
+    }
+
+    /**
+     * @return the end offset (exclusive) of the service level, or -1 if this is not a service MRN
+     */
+    public int getServiceLevelEnd() {
+        return serviceLevelEnd;
+    }
+
+    @Override
+    public String toString() {
+        return mrn;
+    }
+}
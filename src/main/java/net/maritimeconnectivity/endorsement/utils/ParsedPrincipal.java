@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import lombok.Getter;
+import org.keycloak.representations.AccessToken;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The claims of an access token that the access checks need, parsed once so that every check is a plain lookup.
+ */
+public class ParsedPrincipal {
+
+    @Getter
+    private final String orgMrn;
+    private final Set<String> permissions;
+    @Getter
+    private final long expiresAt;
+
+    private ParsedPrincipal(String orgMrn, Set<String> permissions, long expiresAt) {
+        this.orgMrn = orgMrn;
+        this.permissions = permissions;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Parses the org and permissions claims of the given token. The permissions claim is a comma separated list, and
+     * each permission is stored both as given and in lower case, so the common case of a check using the same case
+     * as the token does not have to convert the checked permission.
+     */
+    public static ParsedPrincipal of(AccessToken token) {
+        Map<String, Object> otherClaims = token.getOtherClaims();
+        Object org = otherClaims.get(AccessControlUtil.ORG_PROPERTY_NAME);
+        String orgMrn = org instanceof String ? ((String) org).trim() : null;
+        Set<String> permissions = Collections.emptySet();
+        Object claim = otherClaims.get(AccessControlUtil.PERMISSIONS_PROPERTY_NAME);
+        if (claim instanceof String) {
+            permissions = new HashSet<>();
+            for (String permission : ((String) claim).split(",")) {
+                permission = permission.trim();
+                if (!permission.isEmpty()) {
+                    permissions.add(permission);
+                    permissions.add(permission.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        Long exp = token.getExp();
+        return new ParsedPrincipal(orgMrn, permissions, exp != null ? exp * 1000 : 0);
+    }
+
+    public boolean isInOrg(String orgMrn) {
+        return this.orgMrn != null && this.orgMrn.equalsIgnoreCase(orgMrn);
+    }
+
+    public boolean hasPermission(String permission) {
+        return permission != null && (permissions.contains(permission) || permissions.contains(permission.toLowerCase(Locale.ROOT)));
+    }
+}
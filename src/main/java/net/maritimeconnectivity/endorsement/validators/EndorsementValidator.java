@@ -18,6 +18,7 @@ package net.maritimeconnectivity.endorsement.validators;
 
 
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.utils.MrnUtil;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.Errors;
@@ -62,6 +63,14 @@ public class EndorsementValidator implements Validator, InitializingBean {
             ValidationUtils.rejectIfEmptyOrWhitespace(errors, "parentMrn", "parentMrn.empty", "parentMrn and parentVersion is dependant on each other.");
             ValidationUtils.rejectIfEmptyOrWhitespace(errors, "parentVersion", "parentVersion.empty", "parentMrn and parentVersion is dependant on each other.");
         }
+        String parentMrn = endorsement.getParentMrn();
+        if (parentMrn != null && !parentMrn.trim().isEmpty()) {
+            try {
+                MrnUtil.parseMrn(parentMrn);
+            } catch (IllegalArgumentException e) {
+                errors.rejectValue("parentMrn", "parentMrn.invalid", e.getMessage());
+            }
+        }
 
     }
 }
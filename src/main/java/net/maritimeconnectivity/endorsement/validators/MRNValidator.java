@@ -30,8 +30,8 @@ public class MRNValidator implements ConstraintValidator<MRN, String> {
     @Override
     public boolean isValid(String value, ConstraintValidatorContext context) {
         try {
-            boolean ret = MrnUtil.validateMrn(value);
-            return ret;
+            MrnUtil.parseMrn(value);
+            return true;
         } catch (IllegalArgumentException e) {
             context.disableDefaultConstraintViolation();
             context
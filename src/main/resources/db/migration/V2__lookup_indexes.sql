@@ -0,0 +1,6 @@
+-- Composite indexes matching the derived queries in EndorsementRepository.
+-- The lookup by (org_mrn, service_mrn, service_version) is already served by the unique key from V1.
+-- created_at is appended where it fits so pages using the default sort order can be read in index order.
+CREATE INDEX `idx_endorsements_service` ON `endorsements` (`service_mrn`, `service_version`, `created_at`);
+CREATE INDEX `idx_endorsements_org_level` ON `endorsements` (`org_mrn`, `service_level`, `created_at`);
+CREATE INDEX `idx_endorsements_parent` ON `endorsements` (`parent_mrn`, `parent_version`, `org_mrn`);
@@ -0,0 +1,2 @@
+-- Lets cursor-paged listings of endorsed children seek on created_at without sorting every child of the parent.
+CREATE INDEX `idx_endorsements_parent_created` ON `endorsements` (`parent_mrn`, `parent_version`, `created_at`);
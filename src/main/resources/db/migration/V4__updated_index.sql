@@ -0,0 +1,2 @@
+-- Lets exports of the endorsements updated since a given time seek on updated_at instead of scanning the table.
+CREATE INDEX `idx_endorsements_updated` ON `endorsements` (`updated_at`);
@@ -0,0 +1,10 @@
+-- Endorsements are deleted for real, the tombstones let delta syncs report the deletions until they are compacted.
+CREATE TABLE `endorsement_tombstones` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `org_mrn` VARCHAR(255) NOT NULL,
+  `service_mrn` VARCHAR(255) NOT NULL,
+  `service_version` VARCHAR(255) NOT NULL,
+  `deleted_at` DATETIME NOT NULL,
+  PRIMARY KEY (`id`)
+);
+CREATE INDEX `idx_endorsement_tombstones_deleted` ON `endorsement_tombstones` (`deleted_at`);
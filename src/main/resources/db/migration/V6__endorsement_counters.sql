@@ -0,0 +1,13 @@
+-- Number of endorsements per service version (SERVICE_VERSION: mrn = service_mrn, qualifier = service_version) and
+-- per org and service level (ORG_LEVEL: mrn = org_mrn, qualifier = service_level), kept up to date by every write.
+CREATE TABLE `endorsement_counters` (
+  `counter_type` VARCHAR(16) NOT NULL,
+  `mrn` VARCHAR(255) NOT NULL,
+  `qualifier` VARCHAR(255) NOT NULL,
+  `endorsements` BIGINT NOT NULL,
+  PRIMARY KEY (`counter_type`, `mrn`, `qualifier`)
+);
+INSERT INTO `endorsement_counters` (`counter_type`, `mrn`, `qualifier`, `endorsements`)
+  SELECT 'SERVICE_VERSION', `service_mrn`, `service_version`, COUNT(*) FROM `endorsements` GROUP BY `service_mrn`, `service_version`;
+INSERT INTO `endorsement_counters` (`counter_type`, `mrn`, `qualifier`, `endorsements`)
+  SELECT 'ORG_LEVEL', `org_mrn`, `service_level`, COUNT(*) FROM `endorsements` GROUP BY `org_mrn`, `service_level`;
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+public class ConcurrencyLimitFilterTest {
+
+    @Autowired
+    private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+    @Autowired
+    private ConcurrencyLimitProperties concurrencyLimitProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void shedsWritesBeforeReadsWhenFull() throws Exception {
+        int limit = concurrencyLimitFilter.getLimit();
+        int writes = (int) (limit * (1 - concurrencyLimitProperties.getReservedFraction()));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writesStarted = new CountDownLatch(writes);
+        CountDownLatch readsStarted = new CountDownLatch(limit - writes);
+        FilterChain blocking = (request, response) -> {
+            (HttpMethod.GET.matches(((HttpServletRequest) request).getMethod()) ? readsStarted : writesStarted).countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        double rejectedWrites = meterRegistry.counter("endorsement.concurrency.rejected", "kind", "write").count();
+        double rejectedReads = meterRegistry.counter("endorsement.concurrency.rejected", "kind", "read").count();
+        ExecutorService executor = Executors.newFixedThreadPool(limit);
+        try {
+            // Writes may only take the part of the limit that is not reserved for reads
+            for (int i = 0; i < limit; i++) {
+                if (i == writes) {
+                    assertTrue(writesStarted.await(10, TimeUnit.SECONDS));
+                }
+                String method = i < writes ? "POST" : "GET";
+                executor.execute(() -> {
+                    try {
+                        concurrencyLimitFilter.doFilter(new MockHttpServletRequest(method, "/oidc/endorsements"), new MockHttpServletResponse(), blocking);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            assertTrue(readsStarted.await(10, TimeUnit.SECONDS));
+
+            assertEquals(limit, concurrencyLimitFilter.getInFlight());
+            MockHttpServletResponse write = new MockHttpServletResponse();
+            concurrencyLimitFilter.doFilter(new MockHttpServletRequest("POST", "/oidc/endorsements"), write, blocking);
+            assertEquals(503, write.getStatus());
+            assertEquals("1", write.getHeader("Retry-After"));
+            MockHttpServletResponse read = new MockHttpServletResponse();
+            concurrencyLimitFilter.doFilter(new MockHttpServletRequest("GET", "/oidc/endorsements/a/b"), read, blocking);
+            assertEquals(503, read.getStatus());
+            // Requests outside the API are not limited
+            MockHttpServletResponse health = new MockHttpServletResponse();
+            concurrencyLimitFilter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), health, (request, response) -> { });
+            assertEquals(200, health.getStatus());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, concurrencyLimitFilter.getInFlight());
+        assertEquals(rejectedWrites + 1, meterRegistry.counter("endorsement.concurrency.rejected", "kind", "write").count(), 0.0);
+        assertEquals(rejectedReads + 1, meterRegistry.counter("endorsement.concurrency.rejected", "kind", "read").count(), 0.0);
+        assertEquals(concurrencyLimitFilter.getLimit(), meterRegistry.get("endorsement.concurrency.limit").gauge().value(), 0.0);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+public class MetricsTest {
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @Test
+    public void timesRepositoryMethods() {
+        endorsementRepository.count();
+        endorsementRepository.findByOrgMrnAndServiceMrn("urn:mrn:mcp:org:idp1:dma", "urn:mrn:mcp:service:idp1:dma:instance:nw-nm");
+
+        Timer inherited = meterRegistry.find("endorsement.repository").tags("method", "count", "outcome", "SUCCESSFUL").timer();
+        assertNotNull(inherited);
+        assertTrue(inherited.count() > 0);
+        assertNotNull(meterRegistry.find("endorsement.repository").tags("method", "findByOrgMrnAndServiceMrn").timer());
+    }
+
+    @Test
+    public void publishesPrometheusFormat() {
+        endorsementRepository.count();
+        String scrape = prometheusMeterRegistry.scrape();
+        assertTrue(scrape.contains("endorsement_repository_seconds_bucket"));
+        assertTrue(scrape.contains("hikaricp_connections"));
+        assertTrue(scrape.contains("hibernate_"));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.config;
+
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.services.EndorsementService;
+import org.flywaydb.core.Flyway;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the application against two H2 databases, one acting as primary and one as read replica. Replication is not
+ * simulated: rows inserted straight into the replica show which database a read went to.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "endorsement.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL,
+        "endorsement.datasource.replicas[0].username=sa",
+        "endorsement.datasource.replicas[0].driver-class-name=org.h2.Driver",
+        "endorsement.datasource.lag-query=SELECT seconds FROM replica_lag",
+        "endorsement.datasource.max-lag-seconds=30"
+})
+@WebAppConfiguration
+public class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+    private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+
+    private static JdbcTemplate replica;
+
+    @Autowired
+    private EndorsementService endorsementService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private JdbcTemplate primary;
+
+    @BeforeClass
+    public static void createReplica() {
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(REPLICA_URL, "sa", "");
+        flyway.migrate();
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        replica.execute("CREATE TABLE replica_lag (seconds INT)");
+        replica.update("INSERT INTO replica_lag VALUES (0)");
+        replica.update("INSERT INTO endorsements (service_mrn, service_version, org_mrn, service_level, created_at, updated_at) " +
+                "VALUES (?, '0.1', ?, 'instance', NOW(), NOW())", INSTANCE_MRN, ORG_MRN);
+    }
+
+    @Before
+    public void unwrap() throws SQLException {
+        replicaRoutingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+    }
+
+    @After
+    public void catchUp() {
+        replica.update("UPDATE replica_lag SET seconds = 0");
+        replicaRoutingDataSource.checkReplicas();
+        primary.update("DELETE FROM endorsements");
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToTheReplicaUnlessItLags() {
+        assertEquals(1, endorsementService.listByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1").size());
+
+        replica.update("UPDATE replica_lag SET seconds = 60");
+        replicaRoutingDataSource.checkReplicas();
+        assertEquals(0, endorsementService.listByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1").size());
+
+        replica.update("UPDATE replica_lag SET seconds = 5");
+        replicaRoutingDataSource.checkReplicas();
+        assertEquals(1, endorsementService.listByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1").size());
+    }
+
+    @Test
+    public void writesGoToThePrimary() {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setOrgName("DMA");
+        endorsement.setServiceMrn(INSTANCE_MRN + "-written");
+        endorsement.setServiceVersion("0.1");
+        endorsement.setServiceLevel("instance");
+        endorsement.setUserMrn("urn:mrn:mcp:user:idp1:dma:tgc");
+        endorsementService.upsertEndorsement(endorsement);
+
+        assertEquals(1, (int) primary.queryForObject("SELECT COUNT(*) FROM endorsements", Integer.class));
+        assertEquals(1, (int) replica.queryForObject("SELECT COUNT(*) FROM endorsements", Integer.class));
+    }
+
+    @Test
+    public void lookupsRightAfterAWriteGoToThePrimary() {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setOrgName("DMA");
+        endorsement.setServiceMrn(INSTANCE_MRN);
+        endorsement.setServiceVersion("0.2");
+        endorsement.setServiceLevel("instance");
+        endorsement.setUserMrn("urn:mrn:mcp:user:idp1:dma:tgc");
+        endorsementService.upsertEndorsement(endorsement);
+
+        // The replica still has version 0.1 of the endorsement, which must not end up in the cache
+        Endorsement found = endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.2");
+        assertNotNull(found);
+        assertEquals("0.2", found.getServiceVersion());
+        assertNull(endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1"));
+    }
+
+    @Test
+    public void unreachableReplicaIsSkipped() {
+        replica.execute("DROP TABLE replica_lag");
+        try {
+            replicaRoutingDataSource.checkReplicas();
+            assertFalse(replicaRoutingDataSource.getReplicas().get(0).isHealthy());
+            assertEquals(0, endorsementService.listByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1").size());
+        } finally {
+            replica.execute("CREATE TABLE replica_lag (seconds INT)");
+            replica.update("INSERT INTO replica_lag VALUES (0)");
+        }
+        replicaRoutingDataSource.checkReplicas();
+        assertTrue(replicaRoutingDataSource.getReplicas().get(0).isHealthy());
+    }
+}
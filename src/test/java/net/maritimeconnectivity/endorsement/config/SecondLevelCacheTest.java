@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Date;
+import java.util.function.Supplier;
+
+import static net.maritimeconnectivity.endorsement.repositories.EndorsementFixtures.createEndorsement;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks with the Hibernate statistics that repeated reads are answered from the second-level and query caches
+ * without any JDBC statement, and that writes invalidate them.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+@ActiveProfiles({"test", "second-level-cache"})
+public class SecondLevelCacheTest {
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+    private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @After
+    public void cleanup() {
+        endorsementRepository.deleteAll();
+    }
+
+    @Test
+    public void repeatedEntityReadsUseNoStatements() {
+        Long id = endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2")).getId();
+        entityManagerFactory.getCache().evictAll();
+
+        assertEquals(1, countStatements(() -> endorsementRepository.findById(id).get()));
+        assertEquals(0, countStatements(() -> endorsementRepository.findById(id).get()));
+
+        FunctionCounter hits = meterRegistry.find("hibernate.second.level.cache.region.requests").tags("region", "endorsement-entities", "result", "hit").functionCounter();
+        assertNotNull(hits);
+        assertTrue(hits.count() > 0);
+    }
+
+    @Test
+    public void repeatedFinderQueriesUseNoStatements() {
+        endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+
+        countStatements(() -> endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN));
+        assertEquals(0, countStatements(() -> endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN)));
+        // The paged finders cache both the page and the count
+        countStatements(() -> endorsementRepository.findByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2", PageRequest.of(0, 1)));
+        assertEquals(0, countStatements(() -> endorsementRepository.findByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2", PageRequest.of(0, 1))));
+        countStatements(() -> endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2"));
+        assertEquals(0, countStatements(() -> endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2")));
+    }
+
+    @Test
+    public void writesInvalidateCachedQueries() {
+        endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        countStatements(() -> endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN));
+        countStatements(() -> endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.3"));
+
+        // The upsert goes to JDBC directly
+        transactionTemplate.execute(status -> endorsementRepository.upsert(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.3")));
+
+        assertEquals("0.1.3", endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN).getServiceVersion());
+        assertEquals(1, endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.3").getCount());
+
+        transactionTemplate.execute(status -> endorsementRepository.deleteAllMatching(ORG_MRN, null, null, new Date()));
+        assertEquals(0, endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.3").getCount());
+    }
+
+    /**
+     * Runs the read in its own transaction, and returns the number of JDBC statements it prepared
+     */
+    private long countStatements(Supplier<?> read) {
+        long before = statistics.getPrepareStatementCount();
+        transactionTemplate.execute(status -> read.get());
+        return statistics.getPrepareStatementCount() - before;
+    }
+}
@@ -16,8 +16,16 @@
 package net.maritimeconnectivity.endorsement.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.endorsement.config.RateLimitProperties;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementEvent;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementList;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.OrgStats;
+import net.maritimeconnectivity.endorsement.model.data.ServiceVersionStats;
 import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.services.EndorsementEventFeed;
 import net.maritimeconnectivity.endorsement.services.EndorsementService;
 import net.maritimeconnectivity.endorsement.utils.AccessControlUtil;
 import org.junit.Before;
@@ -28,6 +36,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
 import org.springframework.test.context.ContextConfiguration;
@@ -35,21 +44,43 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -64,11 +95,23 @@ public class EndorsementControllerTests {
 
     private MockMvc mvc;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private AccessControlUtil accessControlUtil;
 
     @MockBean
     private EndorsementService endorsementService;
+
+    @Autowired
+    private EndorsementEventFeed endorsementEventFeed;
+
+    @Autowired
+    private ThreadPoolExecutor databaseExecutor;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
     
     private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
     private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
@@ -82,6 +125,10 @@ public class EndorsementControllerTests {
                 //.alwaysDo(print())
                 .apply(SecurityMockMvcConfigurers.springSecurity())
                 .build();
+        EndorsementVersion empty = new EndorsementVersion(0, null);
+        given(this.endorsementService.getVersionByOrgMrnAndServiceLevel(any(), any())).willReturn(empty);
+        given(this.endorsementService.getVersionByServiceMrnAndServiceVersion(any(), any())).willReturn(empty);
+        given(this.endorsementService.getVersionByOrgMrnAndServiceMrnAndServiceVersion(any(), any(), any())).willReturn(empty);
     }
 
 
@@ -92,7 +139,7 @@ public class EndorsementControllerTests {
     public void testAccessGetEndorsementWithoutAuthentication() {
         given(this.endorsementService.listByOrgMrnAndServiceLevel(ORG_MRN, "instance", null)).willReturn(new PageImpl<Endorsement>(Collections.emptyList()));
         try {
-            mvc.perform(get("/oidc/endorsements-by/instance/" + ORG_MRN).header("Origin", "bla")).andExpect(status().isUnauthorized());
+            perform(get("/oidc/endorsements-by/instance/" + ORG_MRN).header("Origin", "bla")).andExpect(status().isUnauthorized());
         } catch (Exception e) {
             log.error(e.getMessage());
             fail();
@@ -108,11 +155,12 @@ public class EndorsementControllerTests {
 
         given(this.endorsementService.listByOrgMrnAndServiceLevel(ORG_MRN, "instance", null)).willReturn(new PageImpl<Endorsement>(Collections.emptyList()));
         try {
-            mvc.perform(get("/oidc/endorsements-by/instance/" + ORG_MRN).with(authentication(auth)).header("Origin", "bla")).andExpect(status().isOk());
+            perform(get("/oidc/endorsements-by/instance/" + ORG_MRN).with(authentication(auth)).header("Origin", "bla")).andExpect(status().isOk());
         } catch (Exception e) {
             log.error(e.getMessage());
             fail();
         }
+        assertNotNull(meterRegistry.find("endorsement.controller").tags("endpoint", "getEndorsementsByOrgMrn", "outcome", "SUCCESSFUL").timer());
     }
 
     /**
@@ -135,7 +183,7 @@ public class EndorsementControllerTests {
 
         given(this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2")).willReturn(null);
         try {
-            mvc.perform(post("/oidc/endorsements").with(authentication(auth))
+            perform(post("/oidc/endorsements").with(authentication(auth))
                     .header("Origin", "bla")
                     .content(endorsementJson)
                     .contentType("application/json")
@@ -166,7 +214,7 @@ public class EndorsementControllerTests {
 
         given(this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2")).willReturn(null);
         try {
-            mvc.perform(post("/oidc/endorsements").with(authentication(auth))
+            perform(post("/oidc/endorsements").with(authentication(auth))
                     .header("Origin", "bla")
                     .content(endorsementJson)
                     .contentType("application/json")
@@ -196,7 +244,7 @@ public class EndorsementControllerTests {
 
         given(this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2")).willReturn(null);
         try {
-            mvc.perform(post("/oidc/endorsements").with(authentication(auth))
+            perform(post("/oidc/endorsements").with(authentication(auth))
                     .header("Origin", "bla")
                     .content(endorsementJson)
                     .contentType("application/json")
@@ -207,6 +255,79 @@ public class EndorsementControllerTests {
         }
     }
 
+    /**
+     * Try to create a batch of endorsements where only the first one is valid and belongs to the token org, and the
+     * last one is missing
+     */
+    @Test
+    public void testCreateEndorsementBatch() {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+
+        Endorsement validEndorsement = new Endorsement();
+        validEndorsement.setOrgMrn(ORG_MRN);
+        validEndorsement.setOrgName("DMA");
+        validEndorsement.setServiceMrn(INSTANCE_MRN);
+        validEndorsement.setServiceVersion("0.1.2");
+        validEndorsement.setServiceLevel("instance");
+        validEndorsement.setUserMrn(USER_MRN);
+        validEndorsement.setParentMrn(DESIGN_MRN);
+        validEndorsement.setParentVersion("0.3.2");
+
+        Endorsement invalidEndorsement = new Endorsement();
+        invalidEndorsement.setOrgMrn(ORG_MRN);
+        invalidEndorsement.setOrgName("DMA");
+        invalidEndorsement.setServiceMrn(INSTANCE_MRN);
+        invalidEndorsement.setServiceVersion("0.1.3");
+        invalidEndorsement.setServiceLevel("instance");
+        invalidEndorsement.setUserMrn(USER_MRN);
+        invalidEndorsement.setParentMrn(DESIGN_MRN);
+
+        Endorsement otherOrgEndorsement = new Endorsement();
+        otherOrgEndorsement.setOrgMrn("urn:mrn:mcp:org:idp1:sma");
+        otherOrgEndorsement.setOrgName("SMA");
+        otherOrgEndorsement.setServiceMrn(INSTANCE_MRN);
+        otherOrgEndorsement.setServiceVersion("0.1.2");
+        otherOrgEndorsement.setServiceLevel("instance");
+        otherOrgEndorsement.setUserMrn("urn:mrn:mcp:user:idp1:sma:tgc");
+        otherOrgEndorsement.setParentMrn(DESIGN_MRN);
+        otherOrgEndorsement.setParentVersion("0.3.2");
+
+        String batchJson = String.format("[%s,%s,%s,null]", serialize(validEndorsement), serialize(invalidEndorsement), serialize(otherOrgEndorsement));
+        try {
+            perform(post("/oidc/endorsements/batch").with(authentication(auth))
+                    .header("Origin", "bla")
+                    .content(batchJson)
+                    .contentType("application/json")
+            ).andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].success").value(true))
+                    .andExpect(jsonPath("$[1].success").value(false))
+                    .andExpect(jsonPath("$[1].errors[0]").value(containsString("parentVersion")))
+                    .andExpect(jsonPath("$[2].success").value(false))
+                    .andExpect(jsonPath("$[3].index").value(3))
+                    .andExpect(jsonPath("$[3].success").value(false))
+                    .andExpect(jsonPath("$[3].errors[0]").value(containsString("missing")));
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            fail();
+        }
+        verify(this.endorsementService).upsertEndorsements(Collections.singletonList(validEndorsement));
+    }
+
+    /**
+     * Try to create a batch of endorsements larger than the maximum batch size
+     */
+    @Test
+    public void testCreateEndorsementBatchTooLarge() throws Exception {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        String batchJson = "[" + String.join(",", Collections.nCopies(501, "{}")) + "]";
+        perform(post("/oidc/endorsements/batch").with(authentication(auth))
+                .header("Origin", "bla")
+                .content(batchJson)
+                .contentType("application/json")
+        ).andExpect(status().isPayloadTooLarge());
+        verify(this.endorsementService, times(0)).upsertEndorsements(any());
+    }
+
     /**
      * Try to get an endorsement list with authentication
      */
@@ -228,7 +349,7 @@ public class EndorsementControllerTests {
         given(this.endorsementService.listByServiceMrnAndServiceVersion(eq(ORG_MRN), eq("0.3"), any()))
                 .willReturn(new PageImpl<>(Collections.singletonList(validEndorsement)));
         try {
-            mvc.perform(get(String.format("/oidc/endorsements/%s/0.3", ORG_MRN)).with(authentication(auth)).header("Origin", "bla"))
+            perform(get(String.format("/oidc/endorsements/%s/0.3", ORG_MRN)).with(authentication(auth)).header("Origin", "bla"))
                     .andExpect(status().isOk())
                     .andExpect(content().json(endorsementJson));
         } catch (Exception e) {
@@ -238,6 +359,330 @@ public class EndorsementControllerTests {
     }
 
 
+    /**
+     * A client that already has the current version of a list gets 304 without the list being loaded again
+     */
+    @Test
+    public void testConditionalGetEndorsementList() throws Exception {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        String url = String.format("/oidc/endorsements/%s/0.4", INSTANCE_MRN);
+        EndorsementVersion version = new EndorsementVersion(1, new Date(1500000000000L));
+        given(this.endorsementService.getVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.4")).willReturn(version);
+        given(this.endorsementService.listByServiceMrnAndServiceVersion(eq(INSTANCE_MRN), eq("0.4"), any(Pageable.class)))
+                .willReturn(new PageImpl<>(Collections.emptyList()));
+
+        String eTag = perform(get(url).with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Last-Modified", "Fri, 14 Jul 2017 02:40:00 GMT"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertEquals(version.getETag(), eTag);
+
+        perform(get(url).with(authentication(auth)).header("Origin", "bla").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        perform(get(url).with(authentication(auth)).header("Origin", "bla").header("If-Modified-Since", "Fri, 14 Jul 2017 02:40:00 GMT"))
+                .andExpect(status().isNotModified());
+        verify(this.endorsementService, times(1)).listByServiceMrnAndServiceVersion(eq(INSTANCE_MRN), eq("0.4"), any(Pageable.class));
+
+        // A changed list is sent again
+        given(this.endorsementService.getVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.4")).willReturn(new EndorsementVersion(2, version.getLastUpdated()));
+        perform(get(url).with(authentication(auth)).header("Origin", "bla").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * A client that already has the current version of an endorsement gets 304 without the endorsement being loaded
+     */
+    @Test
+    public void testConditionalGetEndorsement() throws Exception {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        String url = String.format("/oidc/endorsement-by/%s/0.4/%s", INSTANCE_MRN, ORG_MRN);
+        perform(get(url).with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(status().isNotFound());
+
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setServiceMrn(INSTANCE_MRN);
+        endorsement.setServiceVersion("0.4");
+        EndorsementVersion version = new EndorsementVersion(1, new Date(1500000000000L));
+        given(this.endorsementService.getVersionByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.4")).willReturn(version);
+        given(this.endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.4")).willReturn(endorsement);
+
+        String eTag = perform(get(url).with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.serviceVersion").value("0.4"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertEquals(version.getETag(), eTag);
+
+        perform(get(url).with(authentication(auth)).header("Origin", "bla").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        perform(get(url).with(authentication(auth)).header("Origin", "bla").header("If-Modified-Since", "Fri, 14 Jul 2017 02:40:00 GMT"))
+                .andExpect(status().isNotModified());
+        verify(this.endorsementService, times(1)).getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.4");
+    }
+
+    /**
+     * Try to look up the endorsements of several service versions in one request
+     */
+    @Test
+    public void testLookupEndorsementsByServices() {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        EndorsementList endorsementList = new EndorsementList();
+        endorsementList.setServiceMrn(INSTANCE_MRN);
+        endorsementList.setServiceVersion("0.3");
+        endorsementList.setEndorsements(Collections.emptyList());
+
+        given(this.endorsementService.listByServiceReferences(any())).willReturn(Collections.singletonList(endorsementList));
+        try {
+            perform(post("/oidc/endorsements/lookup").with(authentication(auth))
+                    .header("Origin", "bla")
+                    .content(String.format("[{\"serviceMrn\":\"%s\",\"serviceVersion\":\"0.3\"}]", INSTANCE_MRN))
+                    .contentType("application/json")
+            ).andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].serviceMrn").value(INSTANCE_MRN))
+                    .andExpect(jsonPath("$[0].serviceVersion").value("0.3"));
+            // Missing service versions and lookups over the maximum size are refused before reaching the database
+            perform(post("/oidc/endorsements/lookup").with(authentication(auth))
+                    .header("Origin", "bla")
+                    .content(String.format("[{\"serviceMrn\":\"%s\",\"serviceVersion\":\"0.3\"},null]", INSTANCE_MRN))
+                    .contentType("application/json")
+            ).andExpect(status().isBadRequest());
+            perform(post("/oidc/endorsements/lookup").with(authentication(auth))
+                    .header("Origin", "bla")
+                    .content("[" + String.join(",", Collections.nCopies(101, "{}")) + "]")
+                    .contentType("application/json")
+            ).andExpect(status().isBadRequest());
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            fail();
+        }
+        verify(this.endorsementService, times(1)).listByServiceReferences(any());
+    }
+
+    /**
+     * Export endorsements as newline delimited JSON
+     */
+    @Test
+    public void testExportEndorsements() {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setServiceMrn(INSTANCE_MRN);
+
+        given(this.endorsementService.exportEndorsements(eq(ORG_MRN), isNull(), isNull(), any())).willAnswer(invocation -> {
+            Consumer<Endorsement> consumer = invocation.getArgument(3);
+            consumer.accept(endorsement);
+            consumer.accept(endorsement);
+            return 2L;
+        });
+        try {
+            MvcResult result = mvc.perform(get("/oidc/endorsements/export").param("orgMrn", ORG_MRN).with(authentication(auth))
+                    .header("Origin", "bla")
+            ).andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                    .andReturn();
+            String[] lines = result.getResponse().getContentAsString().split("\n");
+            assertEquals(2, lines.length);
+            assertEquals(ORG_MRN, new ObjectMapper().readValue(lines[1], Endorsement.class).getOrgMrn());
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            fail();
+        }
+    }
+
+    /**
+     * Subscribe to the change feed, and reconnect with the id of the first event received
+     */
+    @Test
+    public void testStreamEndorsementEvents() throws Exception {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setServiceMrn(INSTANCE_MRN);
+        Endorsement other = new Endorsement();
+        other.setOrgMrn(ORG_MRN + "-other");
+        other.setServiceMrn(INSTANCE_MRN);
+
+        MvcResult result = mvc.perform(get("/oidc/endorsements/events").param("orgMrn", ORG_MRN).with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        endorsementEventFeed.publish(EndorsementEvent.Type.CREATED, endorsement);
+        endorsementEventFeed.publish(EndorsementEvent.Type.CREATED, other);
+        endorsementEventFeed.publish(EndorsementEvent.Type.DELETED, endorsement);
+        String events = awaitContent(result, "event:deleted");
+        assertTrue(events.contains("event:created"));
+        assertFalse(events.contains(ORG_MRN + "-other"));
+
+        Matcher firstId = Pattern.compile("id:(\\w+)-(\\d+)").matcher(events);
+        assertTrue(firstId.find());
+        MvcResult resumed = mvc.perform(get("/oidc/endorsements/events").param("orgMrn", ORG_MRN).with(authentication(auth)).header("Origin", "bla")
+                .header("Last-Event-ID", firstId.group(1) + "-" + firstId.group(2)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertFalse(awaitContent(resumed, "event:deleted").contains("event:created"));
+
+        MvcResult expired = mvc.perform(get("/oidc/endorsements/events").with(authentication(auth)).header("Origin", "bla")
+                .header("Last-Event-ID", firstId.group(1) + "-" + (Long.parseLong(firstId.group(2)) - 10000)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(expired, "event:" + EndorsementEventFeed.RESET_EVENT);
+
+        MvcResult restarted = mvc.perform(get("/oidc/endorsements/events").with(authentication(auth)).header("Origin", "bla")
+                .header("Last-Event-ID", "0-" + firstId.group(2)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(restarted, "event:" + EndorsementEventFeed.RESET_EVENT);
+    }
+
+    /**
+     * Waits for the events sent through an open event stream to contain the given text
+     */
+    private String awaitContent(MvcResult result, String text) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = result.getResponse().getContentAsString();
+        while (!content.contains(text) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = result.getResponse().getContentAsString();
+        }
+        assertTrue(content, content.contains(text));
+        return content;
+    }
+
+    /**
+     * Requests that do not fit in the queue of the database executor are answered with 503
+     */
+    @Test
+    public void testSaturatedDatabaseExecutor() throws Exception {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(databaseExecutor.getMaximumPoolSize());
+        Runnable blocker = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        double rejected = meterRegistry.get("endorsement.db-executor.rejected").counter().count();
+        try {
+            // Occupy every thread of the executor, and then every slot of its queue
+            for (int i = 0; i < databaseExecutor.getMaximumPoolSize(); i++) {
+                databaseExecutor.execute(blocker);
+            }
+            started.await();
+            while (true) {
+                try {
+                    databaseExecutor.execute(blocker);
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+            mvc.perform(get("/oidc/endorsement-by/" + INSTANCE_MRN + "/0.1/" + ORG_MRN).with(authentication(auth)).header("Origin", "bla"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+        } finally {
+            release.countDown();
+        }
+        assertEquals(rejected + 2, meterRegistry.get("endorsement.db-executor.rejected").counter().count(), 0.0);
+        assertNotNull(meterRegistry.find("executor.queued").tags("name", "endorsement.db").gauge());
+        assertNotNull(meterRegistry.find("endorsement.db-executor.wait").timer());
+    }
+
+    /**
+     * An org over its limit on a write endpoint gets 429, other orgs are not affected
+     */
+    @Test
+    public void testRateLimitedOrg() throws Exception {
+        String floodingOrg = "urn:mrn:mcp:org:idp1:flood";
+        RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+        limit.setPermitsPerSecond(0.001);
+        limit.setBurst(2);
+        rateLimitProperties.getOrgs().put(floodingOrg, Collections.singletonMap("delete", limit));
+        double rejected = meterRegistry.counter("endorsement.rate-limit.rejected", "endpoint", "delete").count();
+        try {
+            KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(floodingOrg, "ROLE_USER", "");
+            for (int i = 0; i < 2; i++) {
+                perform(delete("/oidc/endorsements/" + INSTANCE_MRN + "/0.1/" + floodingOrg).with(authentication(auth)).header("Origin", "bla"))
+                        .andExpect(status().isNotFound());
+            }
+            mvc.perform(delete("/oidc/endorsements/" + INSTANCE_MRN + "/0.1/" + floodingOrg).with(authentication(auth)).header("Origin", "bla"))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string("Retry-After", "1000"));
+            assertEquals(rejected + 1, meterRegistry.counter("endorsement.rate-limit.rejected", "endpoint", "delete").count(), 0.0);
+
+            KeycloakAuthenticationToken other = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+            perform(delete("/oidc/endorsements/" + INSTANCE_MRN + "/0.1/" + ORG_MRN).with(authentication(other)).header("Origin", "bla"))
+                    .andExpect(status().isNotFound());
+        } finally {
+            rateLimitProperties.getOrgs().remove(floodingOrg);
+        }
+    }
+
+    /**
+     * Every org only deletes its own endorsements, also the org owning the service
+     */
+    @Test
+    public void testBulkDeleteEndorsements() throws Exception {
+        String otherOrg = "urn:mrn:mcp:org:idp1:other";
+        given(this.endorsementService.deleteByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1", ORG_MRN)).willReturn(2);
+        given(this.endorsementService.deleteByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1", otherOrg)).willReturn(1);
+        given(this.endorsementService.deleteByOrgMrn(otherOrg)).willReturn(5);
+
+        // ORG_MRN owns INSTANCE_MRN, but the endorsements made by other orgs are not deleted
+        KeycloakAuthenticationToken owner = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        perform(delete("/oidc/endorsements/" + INSTANCE_MRN + "/0.1").with(authentication(owner)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(2));
+        verify(this.endorsementService, times(0)).deleteByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1", null);
+        verify(this.endorsementService, times(0)).deleteByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1", otherOrg);
+
+        KeycloakAuthenticationToken other = TokenGenerator.generateKeycloakToken(otherOrg, "ROLE_USER", "");
+        perform(delete("/oidc/endorsements/" + INSTANCE_MRN + "/0.1").with(authentication(other)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(1));
+        perform(delete("/oidc/endorsements-by/" + otherOrg).with(authentication(other)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(5));
+        perform(delete("/oidc/endorsements-by/" + ORG_MRN).with(authentication(other)).header("Origin", "bla"))
+                .andExpect(status().isForbidden());
+        verify(this.endorsementService, times(0)).deleteByOrgMrn(ORG_MRN);
+    }
+
+    @Test
+    public void testEndorsementStats() throws Exception {
+        ServiceVersionStats serviceStats = new ServiceVersionStats();
+        serviceStats.setServiceMrn(INSTANCE_MRN);
+        serviceStats.setServiceVersion("0.1");
+        serviceStats.setEndorsements(4);
+        given(this.endorsementService.getServiceVersionStats(INSTANCE_MRN, "0.1")).willReturn(serviceStats);
+        OrgStats orgStats = new OrgStats();
+        orgStats.setOrgMrn(ORG_MRN);
+        orgStats.setEndorsements(3);
+        orgStats.setEndorsementsByServiceLevel(Collections.singletonMap("instance", 3L));
+        given(this.endorsementService.getOrgStats(ORG_MRN)).willReturn(orgStats);
+
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken(ORG_MRN, "ROLE_USER", "");
+        perform(get("/oidc/endorsement-stats/" + INSTANCE_MRN + "/0.1").with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.endorsements").value(4));
+        perform(get("/oidc/endorsement-stats/" + ORG_MRN).with(authentication(auth)).header("Origin", "bla"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.endorsementsByServiceLevel.instance").value(3));
+    }
+
+    /**
+     * Performs the request, and when the handler runs on the database executor waits for its response
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        ResultActions actions = mvc.perform(request);
+        MvcResult result = actions.andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mvc.perform(asyncDispatch(result));
+        }
+        return actions;
+    }
+
     /**
      * Helper function to serialize an endorsement to json
      * @param endorsement
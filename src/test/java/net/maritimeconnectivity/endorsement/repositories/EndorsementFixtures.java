@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+
+import java.util.Date;
+
+/**
+ * Helper class to build valid endorsements for use in tests that store them.
+ */
+public class EndorsementFixtures {
+
+    public static final String USER_MRN = "urn:mrn:mcp:user:idp1:dma:tgc";
+
+    /**
+     * Builds an endorsement of an instance made by the given org, with all required fields and the timestamps set
+     */
+    public static Endorsement createEndorsement(String orgMrn, String serviceMrn, String serviceVersion) {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(orgMrn);
+        endorsement.setOrgName("DMA");
+        endorsement.setServiceMrn(serviceMrn);
+        endorsement.setServiceVersion(serviceVersion);
+        endorsement.setServiceLevel("instance");
+        endorsement.setUserMrn(USER_MRN);
+        endorsement.setParentMrn("urn:mrn:mcp:service:idp1:dma:design:nw-nm");
+        endorsement.setParentVersion("0.3.2");
+        Date now = new Date();
+        endorsement.setCreatedAt(now);
+        endorsement.setUpdatedAt(now);
+        return endorsement;
+    }
+}
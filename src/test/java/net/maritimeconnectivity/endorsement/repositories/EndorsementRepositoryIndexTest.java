@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Runs EXPLAIN on the SQL behind each EndorsementRepository finder (and the COUNT query of the paged ones) to make
+ * sure the schema created by the Flyway migrations has an index for every lookup path.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+@Slf4j
+public class EndorsementRepositoryIndexTest {
+
+    private static final String SELECT = "SELECT * FROM endorsements WHERE ";
+    private static final String COUNT = "SELECT COUNT(id) FROM endorsements WHERE ";
+    private static final String ORDER = " ORDER BY created_at, id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void findByOrgMrnAndServiceLevelUsesIndex() {
+        String where = "org_mrn = 'a' AND service_level = 'b'";
+        assertIndexed(SELECT + where + ORDER);
+        assertIndexed(COUNT + where);
+    }
+
+    @Test
+    public void findByServiceMrnAndServiceVersionUsesIndex() {
+        String where = "service_mrn = 'a' AND service_version = 'b'";
+        assertIndexed(SELECT + where + ORDER);
+        assertIndexed(COUNT + where);
+    }
+
+    @Test
+    public void findByOrgMrnAndServiceMrnAndServiceVersionUsesIndex() {
+        assertIndexed(SELECT + "org_mrn = 'a' AND service_mrn = 'b' AND service_version = 'c'");
+    }
+
+    @Test
+    public void findByParentMrnAndParentVersionUsesIndex() {
+        String where = "parent_mrn = 'a' AND parent_version = 'b'";
+        assertIndexed(SELECT + where + ORDER);
+        assertIndexed(COUNT + where);
+    }
+
+    @Test
+    public void findByParentMrnAndParentVersionAndOrgMrnUsesIndex() {
+        String where = "parent_mrn = 'a' AND parent_version = 'b' AND org_mrn = 'c'";
+        assertIndexed(SELECT + where + ORDER);
+        assertIndexed(COUNT + where);
+    }
+
+    @Test
+    public void findByServiceMrnInUsesIndex() {
+        String where = "service_mrn IN ('a', 'b')";
+        assertIndexed(SELECT + where + ORDER);
+        assertIndexed(COUNT + where);
+    }
+
+    @Test
+    public void findByServiceReferencesUsesIndex() {
+        assertIndexed(SELECT + "service_mrn IN ('a', 'b') AND ((service_mrn = 'a' AND service_version = 'c') OR (service_mrn = 'b' AND service_version = 'd'))");
+    }
+
+    @Test
+    public void findKeysForUpdateUsesIndex() {
+        assertIndexed(SELECT + "org_mrn IN ('a', 'b') AND ((org_mrn = 'a' AND service_mrn = 'c') OR (org_mrn = 'b' AND service_mrn = 'd'))");
+    }
+
+    @Test
+    public void keysetFindersUseIndex() {
+        String after = " AND (created_at > '2020-01-01' OR (created_at = '2020-01-01' AND id > 10))" + ORDER;
+        assertIndexed(SELECT + "org_mrn = 'a' AND service_level = 'b'" + after);
+        assertIndexed(SELECT + "service_mrn = 'a' AND service_version = 'b'" + after);
+        assertIndexed(SELECT + "parent_mrn = 'a' AND parent_version = 'b'" + after);
+        assertIndexed(SELECT + "parent_mrn = 'a' AND parent_version = 'b' AND org_mrn = 'c'" + after);
+    }
+
+    @Test
+    public void exportFiltersUseIndex() {
+        assertIndexed(SELECT + "org_mrn = 'a'");
+        assertIndexed(SELECT + "service_mrn = 'a'");
+        assertIndexed(SELECT + "updated_at >= '2020-01-01'");
+    }
+
+    @Test
+    public void deltaQueriesUseIndex() {
+        assertIndexed(SELECT + "updated_at >= '2020-01-01' AND (updated_at > '2020-01-01' OR id > 10) ORDER BY updated_at, id");
+        assertIndexed("SELECT * FROM endorsement_tombstones WHERE deleted_at >= '2020-01-01' AND (deleted_at > '2020-01-01' OR id > 10) ORDER BY deleted_at, id");
+        assertIndexed("DELETE FROM endorsement_tombstones WHERE deleted_at < '2020-01-01'");
+    }
+
+    @Test
+    public void versionQueriesUseIndex() {
+        String version = "SELECT COUNT(id), MAX(updated_at) FROM endorsements WHERE ";
+        assertIndexed(version + "org_mrn = 'a' AND service_level = 'b'");
+        assertIndexed(version + "service_mrn = 'a' AND service_version = 'b'");
+        assertIndexed(version + "parent_mrn = 'a' AND parent_version = 'b'");
+        assertIndexed(version + "parent_mrn = 'a' AND parent_version = 'b' AND org_mrn = 'c'");
+    }
+
+    private void assertIndexed(String sql) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        log.debug(plan);
+        assertFalse("Query falls back to a table scan: " + plan, plan.contains("tableScan"));
+    }
+}
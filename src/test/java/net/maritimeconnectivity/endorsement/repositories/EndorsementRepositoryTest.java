@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.repositories;
+
+import net.maritimeconnectivity.endorsement.model.data.EndorsementVersion;
+import net.maritimeconnectivity.endorsement.model.data.ServiceReference;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+import net.maritimeconnectivity.endorsement.utils.KeysetCursor;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static net.maritimeconnectivity.endorsement.repositories.EndorsementFixtures.createEndorsement;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+public class EndorsementRepositoryTest {
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+    private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private EndorsementTombstoneRepository endorsementTombstoneRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @After
+    public void cleanup() {
+        endorsementRepository.deleteAll();
+    }
+
+    @Test
+    public void upsertInsertsAndThenUpdates() {
+        Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        transactionTemplate.execute(status -> endorsementRepository.upsert(endorsement));
+        Endorsement inserted = endorsementRepository.findByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        assertNotNull(inserted);
+        assertNotNull(inserted.getCreatedAt());
+
+        Endorsement update = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        update.setUserMrn("urn:mrn:mcp:user:idp1:dma:other");
+        update.setCreatedAt(new Date(0));
+        transactionTemplate.execute(status -> endorsementRepository.upsert(update));
+        Endorsement updated = endorsementRepository.findByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        assertEquals(1, endorsementRepository.count());
+        assertEquals(inserted.getId(), updated.getId());
+        assertEquals(inserted.getCreatedAt(), updated.getCreatedAt());
+        assertEquals("urn:mrn:mcp:user:idp1:dma:other", updated.getUserMrn());
+    }
+
+    @Test
+    public void upsertAllStoresEveryEndorsement() {
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            endorsement.setServiceMrn(INSTANCE_MRN + "-" + i);
+            endorsements.add(endorsement);
+        }
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+        assertEquals(250, endorsementRepository.count());
+    }
+
+    @Test
+    public void keysetFinderSeeksPastCursor() {
+        for (int i = 0; i < 5; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            endorsement.setOrgMrn(ORG_MRN + i);
+            endorsementRepository.save(endorsement);
+        }
+        List<Long> seen = new ArrayList<>();
+        KeysetCursor cursor = KeysetCursor.first();
+        List<Endorsement> page;
+        do {
+            page = endorsementRepository.findByServiceMrnAndServiceVersionAfter(INSTANCE_MRN, "0.1.2", cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, 2));
+            for (Endorsement endorsement : page) {
+                seen.add(endorsement.getId());
+            }
+            if (!page.isEmpty()) {
+                cursor = KeysetCursor.decode(KeysetCursor.after(page.get(page.size() - 1)).encode());
+            }
+        } while (!page.isEmpty());
+        assertEquals(5, seen.size());
+        assertEquals(5, new HashSet<>(seen).size());
+    }
+
+    @Test
+    public void deltaFinderSeeksPastEndorsementsUpdatedAtTheSameTime() {
+        Date updatedAt = new Date();
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            endorsement.setOrgMrn(ORG_MRN + i);
+            endorsement.setUpdatedAt(updatedAt);
+            endorsements.add(endorsement);
+        }
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+        List<Long> seen = new ArrayList<>();
+        Date after = updatedAt;
+        long afterId = 0;
+        List<Endorsement> page;
+        do {
+            page = endorsementRepository.findByUpdatedAtAfter(after, afterId, PageRequest.of(0, 2));
+            for (Endorsement endorsement : page) {
+                assertEquals(updatedAt.getTime(), endorsement.getUpdatedAt().getTime());
+                seen.add(endorsement.getId());
+                after = endorsement.getUpdatedAt();
+                afterId = endorsement.getId();
+            }
+        } while (!page.isEmpty());
+        assertEquals(5, seen.size());
+        assertEquals(5, new HashSet<>(seen).size());
+    }
+
+    @Test
+    public void findByServiceReferencesOnlyReturnsTheRequestedVersions() {
+        List<ServiceReference> services = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+                endorsement.setServiceMrn(INSTANCE_MRN + i);
+                endorsement.setServiceVersion("0.1." + j);
+                endorsement.setOrgMrn(ORG_MRN + i + j);
+                endorsementRepository.save(endorsement);
+            }
+            ServiceReference service = new ServiceReference();
+            service.setServiceMrn(INSTANCE_MRN + i);
+            service.setServiceVersion("0.1." + i);
+            services.add(service);
+        }
+        List<String> found = endorsementRepository.findByServiceReferences(services).stream()
+                .map(endorsement -> endorsement.getServiceMrn() + "@" + endorsement.getServiceVersion())
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(INSTANCE_MRN + "0@0.1.0", INSTANCE_MRN + "1@0.1.1"), found);
+    }
+
+    @Test
+    public void scrollAppliesOnlyGivenFilters() {
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            endorsement.setOrgMrn(ORG_MRN + i);
+            endorsement.setUpdatedAt(new Date(i * 1000L));
+            endorsements.add(endorsement);
+        }
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+        List<Endorsement> all = new ArrayList<>();
+        assertEquals(3L, (long) transactionTemplate.execute(status -> endorsementRepository.scroll(null, null, null, all::add)));
+        assertEquals(3, all.size());
+        assertEquals(1L, (long) transactionTemplate.execute(status -> endorsementRepository.scroll(ORG_MRN + 1, INSTANCE_MRN, null, e -> { })));
+        assertEquals(0L, (long) transactionTemplate.execute(status -> endorsementRepository.scroll(null, INSTANCE_MRN + "-other", null, e -> { })));
+        assertEquals(2L, (long) transactionTemplate.execute(status -> endorsementRepository.scroll(null, null, new Date(1000L), e -> { })));
+    }
+
+    @Test
+    public void findersDoNotManageListedEndorsements() {
+        Endorsement saved = endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        transactionTemplate.execute(status -> {
+            List<Endorsement> endorsements = endorsementRepository.findByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2");
+            assertEquals(1, endorsements.size());
+            assertEquals(saved.getId(), endorsements.get(0).getId());
+            assertEquals(saved, endorsements.get(0));
+            assertFalse(entityManager.contains(endorsements.get(0)));
+            Page<Endorsement> page = endorsementRepository.findByOrgMrnAndServiceLevel(ORG_MRN, "instance", PageRequest.of(0, 10, Sort.by("createdAt", "id")));
+            assertEquals(1, page.getTotalElements());
+            assertFalse(entityManager.contains(page.getContent().get(0)));
+            Endorsement single = endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN);
+            assertTrue(entityManager.unwrap(Session.class).isReadOnly(single));
+            return null;
+        });
+    }
+
+    @Test
+    public void findHierarchyFollowsParentsDownToMaxDepth() {
+        String spec = "urn:mrn:mcp:service:idp1:dma:specification:nw-nm";
+        String design = "urn:mrn:mcp:service:idp1:dma:design:nw-nm";
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (String org : new String[]{ORG_MRN, ORG_MRN + "2"}) {
+            Endorsement designEndorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            designEndorsement.setOrgMrn(org);
+            designEndorsement.setServiceMrn(design);
+            designEndorsement.setServiceVersion("0.3.2");
+            designEndorsement.setServiceLevel("design");
+            designEndorsement.setParentMrn(spec);
+            designEndorsement.setParentVersion("1.0");
+            endorsements.add(designEndorsement);
+            Endorsement instanceEndorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            instanceEndorsement.setOrgMrn(org);
+            endorsements.add(instanceEndorsement);
+        }
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+
+        List<Endorsement> all = endorsementRepository.findHierarchy(spec, "1.0", null, 5);
+        assertEquals(4, all.size());
+        assertEquals(design, all.get(0).getServiceMrn());
+        assertEquals(design, all.get(1).getServiceMrn());
+        assertEquals(INSTANCE_MRN, all.get(2).getServiceMrn());
+        assertEquals(INSTANCE_MRN, all.get(3).getServiceMrn());
+        assertEquals(2, endorsementRepository.findHierarchy(spec, "1.0", null, 1).size());
+        assertEquals(2, endorsementRepository.findHierarchy(spec, "1.0", ORG_MRN, 5).size());
+    }
+
+    @Test
+    public void versionChangesWithTheListing() {
+        EndorsementVersion empty = endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2");
+        assertEquals(0, empty.getCount());
+        assertNull(empty.getLastUpdated());
+
+        Endorsement endorsement = endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        Endorsement other = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        other.setOrgMrn(ORG_MRN + "2");
+        other = endorsementRepository.save(other);
+        EndorsementVersion version = endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2");
+        assertEquals(2, version.getCount());
+        assertEquals(Math.max(endorsement.getUpdatedAt().getTime(), other.getUpdatedAt().getTime()), version.getLastModified());
+        assertEquals(1, endorsementRepository.findVersionByOrgMrnAndServiceLevel(ORG_MRN, "instance").getCount());
+        assertEquals(2, endorsementRepository.findVersionByParentMrnAndParentVersion("urn:mrn:mcp:service:idp1:dma:design:nw-nm", "0.3.2").getCount());
+        assertEquals(1, endorsementRepository.findVersionByParentMrnAndParentVersionAndOrgMrn("urn:mrn:mcp:service:idp1:dma:design:nw-nm", "0.3.2", ORG_MRN).getCount());
+        EndorsementVersion single = endorsementRepository.findVersionByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        assertEquals(endorsement.getUpdatedAt().getTime(), single.getLastModified());
+        assertEquals(single.getETag(), endorsementRepository.findVersionByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2".toUpperCase()).getETag());
+        assertEquals(0, endorsementRepository.findVersionByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.3").getCount());
+        EndorsementVersion hierarchy = endorsementRepository.findHierarchyVersion("urn:mrn:mcp:service:idp1:dma:design:nw-nm", "0.3.2", null, 5);
+        assertEquals(version.getETag(), hierarchy.getETag());
+
+        // Deleting the endorsement updated last still changes the version
+        endorsementRepository.delete(other);
+        EndorsementVersion deleted = endorsementRepository.findVersionByServiceMrnAndServiceVersion(INSTANCE_MRN, "0.1.2");
+        assertNotEquals(version.getETag(), deleted.getETag());
+        assertEquals(endorsement.getUpdatedAt().getTime(), deleted.getLastModified());
+    }
+
+    @Test
+    public void keyedDeleteReportsAffectedRows() {
+        endorsementRepository.save(createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        assertEquals(0, (int) transactionTemplate.execute(status -> endorsementRepository.deleteByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.3")));
+        assertEquals(1, (int) transactionTemplate.execute(status -> endorsementRepository.deleteByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2")));
+        assertNull(endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN));
+    }
+
+    @Test
+    public void deleteAllMatchingRecordsTombstones() {
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+            endorsement.setOrgMrn(ORG_MRN + i);
+            endorsements.add(endorsement);
+        }
+        Endorsement otherService = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+        otherService.setServiceMrn(INSTANCE_MRN + "-bulk");
+        endorsements.add(otherService);
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+        Date deletedAt = new Date();
+
+        List<Endorsement> deleted = transactionTemplate.execute(status -> endorsementRepository.deleteAllMatching(ORG_MRN + 1, INSTANCE_MRN, "0.1.2", deletedAt));
+        assertEquals(1, deleted.size());
+        assertEquals(ORG_MRN + 1, deleted.get(0).getOrgMrn());
+        deleted = transactionTemplate.execute(status -> endorsementRepository.deleteAllMatching(null, INSTANCE_MRN, "0.1.2", deletedAt));
+        assertEquals(2, deleted.size());
+        assertEquals(0, transactionTemplate.execute(status -> endorsementRepository.deleteAllMatching(null, INSTANCE_MRN, "0.1.2", deletedAt)).size());
+        assertNotNull(endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN + "-bulk"));
+
+        List<EndorsementTombstone> tombstones = new ArrayList<>();
+        for (EndorsementTombstone tombstone : endorsementTombstoneRepository.findByDeletedAtAfter(deletedAt, 0L, PageRequest.of(0, 1000))) {
+            if (INSTANCE_MRN.equals(tombstone.getServiceMrn())) {
+                tombstones.add(tombstone);
+            }
+        }
+        assertEquals(3, tombstones.size());
+        assertEquals(3, new HashSet<>(tombstones.stream().map(EndorsementTombstone::getOrgMrn).collect(Collectors.toList())).size());
+        endorsementTombstoneRepository.deleteAll(tombstones);
+    }
+
+    @Test
+    public void findKeysForUpdateOnlyLocksTheRequestedPairs() {
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2");
+                endorsement.setOrgMrn(ORG_MRN + i);
+                endorsement.setServiceMrn(INSTANCE_MRN + j);
+                endorsements.add(endorsement);
+            }
+        }
+        transactionTemplate.execute(status -> {
+            endorsementRepository.upsertAll(endorsements);
+            return null;
+        });
+
+        // (org0, service0) and (org1, service1), but not the other two pairs of the same orgs and services
+        List<Endorsement> requested = Arrays.asList(endorsements.get(0), endorsements.get(3), endorsements.get(0));
+        List<String> locked = transactionTemplate.execute(status -> endorsementRepository.findKeysForUpdate(requested)).stream()
+                .map(endorsement -> endorsement.getOrgMrn() + "@" + endorsement.getServiceMrn())
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(ORG_MRN + "0@" + INSTANCE_MRN + "0", ORG_MRN + "1@" + INSTANCE_MRN + "1"), locked);
+    }
+
+    @Test(expected = InvalidDataAccessApiUsageException.class)
+    public void deleteAllMatchingNeedsAFilter() {
+        transactionTemplate.execute(status -> endorsementRepository.deleteAllMatching(null, null, null, new Date()));
+    }
+}
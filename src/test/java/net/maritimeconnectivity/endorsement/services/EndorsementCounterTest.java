@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.maritimeconnectivity.endorsement.model.data.OrgStats;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementCounterRepository;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static net.maritimeconnectivity.endorsement.repositories.EndorsementFixtures.createEndorsement;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the counters and the upsert metrics follow the writes of {@link EndorsementService}, and that the
+ * counters agree with a rebuild.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+public class EndorsementCounterTest {
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+    private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+
+    @Autowired
+    private EndorsementService endorsementService;
+
+    @Autowired
+    private EndorsementCounterReconciler endorsementCounterReconciler;
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private EndorsementCounterRepository endorsementCounterRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Before
+    @After
+    public void clear() {
+        endorsementRepository.deleteAll();
+        endorsementCounterRepository.deleteAll();
+    }
+
+    @Test
+    public void upsertsAreCountedAsCreatedOrUpdatedFromTheStoredRow() {
+        double created = upserts("created");
+        double updated = upserts("updated");
+        Endorsement first = endorsementService.upsertEndorsement(createEndorsement(ORG_MRN, INSTANCE_MRN, "1.0"));
+        Date createdAt = first.getCreatedAt();
+        Endorsement second = endorsementService.upsertEndorsement(createEndorsement(ORG_MRN, INSTANCE_MRN, "2.0"));
+
+        assertEquals(created + 1, upserts("created"), 0);
+        assertEquals(updated + 1, upserts("updated"), 0);
+        // The update returns the creation time of the stored row
+        assertEquals(createdAt.getTime(), second.getCreatedAt().getTime());
+        assertTrue(second.getUpdatedAt().getTime() >= createdAt.getTime());
+    }
+
+    @Test
+    public void countersFollowWrites() {
+        endorsementService.upsertEndorsement(createEndorsement(ORG_MRN, INSTANCE_MRN, "1.0"));
+        endorsementService.upsertEndorsement(createEndorsement(ORG_MRN + "2", INSTANCE_MRN, "1.0"));
+        assertEquals(2, endorsementService.getServiceVersionStats(INSTANCE_MRN, "1.0").getEndorsements());
+
+        // Moving to another version moves the count, endorsing the same version again does not change it
+        endorsementService.upsertEndorsement(createEndorsement(ORG_MRN, INSTANCE_MRN, "2.0"));
+        endorsementService.upsertEndorsement(createEndorsement(ORG_MRN, INSTANCE_MRN, "2.0"));
+        assertEquals(1, endorsementService.getServiceVersionStats(INSTANCE_MRN, "1.0").getEndorsements());
+        assertEquals(1, endorsementService.getServiceVersionStats(INSTANCE_MRN, "2.0").getEndorsements());
+
+        // A batch with the same org and service twice counts the last one
+        endorsementService.upsertEndorsements(Arrays.asList(
+                createEndorsement(ORG_MRN, INSTANCE_MRN + "-2", "1.0"),
+                createEndorsement(ORG_MRN, INSTANCE_MRN + "-2", "2.0"),
+                createEndorsement(ORG_MRN + "2", INSTANCE_MRN, "2.0")));
+        assertEquals(0, endorsementService.getServiceVersionStats(INSTANCE_MRN, "1.0").getEndorsements());
+        assertEquals(2, endorsementService.getServiceVersionStats(INSTANCE_MRN, "2.0").getEndorsements());
+        assertEquals(1, endorsementService.getServiceVersionStats(INSTANCE_MRN + "-2", "2.0").getEndorsements());
+        OrgStats orgStats = endorsementService.getOrgStats(ORG_MRN);
+        assertEquals(2, orgStats.getEndorsements());
+        assertEquals(2L, (long) orgStats.getEndorsementsByServiceLevel().get("instance"));
+
+        assertTrue(endorsementService.deleteEndorsement(ORG_MRN, INSTANCE_MRN, "2.0"));
+        assertEquals(1, endorsementService.getServiceVersionStats(INSTANCE_MRN, "2.0").getEndorsements());
+        assertEquals(1, endorsementService.getOrgStats(ORG_MRN).getEndorsements());
+        assertEquals(1, endorsementService.deleteByOrgMrn(ORG_MRN + "2"));
+        assertEquals(0, endorsementService.getServiceVersionStats(INSTANCE_MRN, "2.0").getEndorsements());
+        assertEquals(0, endorsementService.getOrgStats(ORG_MRN + "2").getEndorsements());
+        assertTrue(endorsementService.getOrgStats(ORG_MRN + "2").getEndorsementsByServiceLevel().isEmpty());
+    }
+
+    @Test
+    public void reconciliationRebuildsCounters() {
+        endorsementService.upsertEndorsements(Arrays.asList(
+                createEndorsement(ORG_MRN, INSTANCE_MRN, "1.0"),
+                createEndorsement(ORG_MRN + "2", INSTANCE_MRN, "1.0")));
+        // Rows written around the service are not counted until the counters are rebuilt
+        endorsementRepository.save(createEndorsement(ORG_MRN + "3", INSTANCE_MRN, "1.0"));
+        endorsementRepository.delete(endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN));
+        assertEquals(2, endorsementService.getServiceVersionStats(INSTANCE_MRN, "1.0").getEndorsements());
+        assertEquals(1, endorsementService.getOrgStats(ORG_MRN).getEndorsements());
+
+        endorsementCounterReconciler.reconcile();
+        assertEquals(2, endorsementService.getServiceVersionStats(INSTANCE_MRN, "1.0").getEndorsements());
+        assertEquals(0, endorsementService.getOrgStats(ORG_MRN).getEndorsements());
+        assertEquals(1, endorsementService.getOrgStats(ORG_MRN + "3").getEndorsements());
+    }
+
+    private double upserts(String result) {
+        return meterRegistry.counter("endorsement.upserts", "result", result).count();
+    }
+}
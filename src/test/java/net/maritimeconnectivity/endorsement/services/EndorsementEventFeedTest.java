@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class EndorsementEventFeedTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EndorsementEventFeed feed = new EndorsementEventFeed(meterRegistry, 10, 600, 10, 2, 1);
+
+    @After
+    public void close() {
+        feed.close();
+    }
+
+    @Test
+    public void subscribersBeyondTheCapAreRefused() {
+        assertNotNull(feed.subscribe(null, null, null));
+        assertNotNull(feed.subscribe("urn:mrn:mcp:service:idp1:dma:instance:a", null, null));
+        try {
+            feed.subscribe(null, null, null);
+            fail("The third subscriber should have been refused");
+        } catch (RejectedExecutionException e) {
+            assertEquals(2.0, meterRegistry.get("endorsement.events.subscribers").gauge().value(), 0);
+        }
+    }
+}
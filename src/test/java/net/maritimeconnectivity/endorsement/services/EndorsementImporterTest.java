@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import net.maritimeconnectivity.endorsement.model.data.EndorsementImportResult;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+@TestPropertySource(properties = {"endorsement.import.chunk-size=2", "endorsement.import.max-record-bytes=1000"})
+public class EndorsementImporterTest {
+
+    private static final String LINE = "{\"orgMrn\":\"urn:mrn:mcp:org:idp1:dma\",\"orgName\":\"DMA\",\"serviceMrn\":\"%s\",\"serviceVersion\":\"0.1.2\"," +
+            "\"serviceLevel\":\"instance\",\"userMrn\":\"urn:mrn:mcp:user:idp1:dma:tgc\",\"parentMrn\":\"urn:mrn:mcp:service:idp1:dma:design:nw-nm\",\"parentVersion\":\"0.3.2\"}";
+
+    @Autowired
+    private EndorsementImporter endorsementImporter;
+
+    @Autowired
+    private EndorsementRepository endorsementRepository;
+
+    @After
+    public void cleanup() {
+        endorsementRepository.deleteAll();
+    }
+
+    @Test
+    public void importsValidLinesAndReportsFailedOnes() throws Exception {
+        String input = String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:a") + "\n"
+                + "{not json\n"
+                + "\n"
+                + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:b") + "\n"
+                + String.format(LINE, "not an mrn") + "\n"
+                + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:c") + "\n"
+                + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:denied") + "\n"
+                + "{\"orgName\":\"" + new String(new char[100000]).replace('\0', 'x') + "\"}\n"
+                + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:d") + " " + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:e") + "\n"
+                + String.format(LINE, "urn:mrn:mcp:service:idp1:dma:instance:f");
+
+        EndorsementImportResult result = endorsementImporter.importEndorsements(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                endorsement -> !endorsement.getServiceMrn().endsWith("denied"));
+
+        assertEquals(4, result.getImported());
+        assertEquals(5, result.getFailed());
+        assertEquals(2, result.getFailures().get(0).getLine());
+        assertEquals(5, result.getFailures().get(1).getLine());
+        assertEquals(7, result.getFailures().get(2).getLine());
+        // The line over the maximum record size is skipped without being read
+        assertEquals(8, result.getFailures().get(3).getLine());
+        assertEquals("Line is longer than 1000 bytes", result.getFailures().get(3).getErrors().get(0));
+        assertEquals(9, result.getFailures().get(4).getLine());
+        assertEquals(4, endorsementRepository.count());
+    }
+}
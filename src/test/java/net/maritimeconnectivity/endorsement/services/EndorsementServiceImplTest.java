@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.services;
+
+import net.maritimeconnectivity.endorsement.model.data.EndorsementDelta;
+import net.maritimeconnectivity.endorsement.model.data.EndorsementNode;
+import net.maritimeconnectivity.endorsement.model.db.Endorsement;
+import net.maritimeconnectivity.endorsement.model.db.EndorsementTombstone;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementRepository;
+import net.maritimeconnectivity.endorsement.repositories.EndorsementTombstoneRepository;
+import net.maritimeconnectivity.endorsement.utils.DeltaCursor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@WebAppConfiguration
+public class EndorsementServiceImplTest {
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+    private static final String INSTANCE_MRN = "urn:mrn:mcp:service:idp1:dma:instance:nw-nm";
+
+    @Autowired
+    private EndorsementService endorsementService;
+
+    @MockBean
+    private EndorsementRepository endorsementRepository;
+
+    @Autowired
+    private EndorsementTombstoneRepository endorsementTombstoneRepository;
+
+    @Autowired
+    private EndorsementTombstoneCompactor endorsementTombstoneCompactor;
+
+    @Autowired
+    private EndorsementExistenceFilter endorsementExistenceFilter;
+
+    @Test
+    public void repeatedLookupsAreCachedUntilDelete() {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(ORG_MRN);
+        endorsement.setServiceMrn(INSTANCE_MRN);
+        endorsement.setServiceVersion("0.1.2");
+        given(this.endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN)).willReturn(endorsement);
+        // The filter was built from the mocked repository, so it does not know the endorsement yet
+        this.endorsementExistenceFilter.add(endorsement);
+
+        assertEquals(endorsement, endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        assertEquals(endorsement, endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        // Another version of the same service is answered from the same entry
+        assertNull(endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.3"));
+        verify(this.endorsementRepository, times(1)).findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN);
+
+        given(this.endorsementRepository.deleteByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2")).willReturn(1);
+        assertTrue(endorsementService.deleteEndorsement(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        given(this.endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN)).willReturn(null);
+
+        assertNull(endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        assertNull(endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, INSTANCE_MRN, "0.1.2"));
+        verify(this.endorsementRepository, times(2)).findByOrgMrnAndServiceMrn(ORG_MRN, INSTANCE_MRN);
+    }
+
+    @Test
+    public void definiteMissesDoNotReachTheRepository() {
+        String serviceMrn = "urn:mrn:mcp:service:idp1:dma:instance:unknown";
+        assertNull(endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, serviceMrn, "1.0"));
+        verify(this.endorsementRepository, times(0)).findByOrgMrnAndServiceMrn(ORG_MRN, serviceMrn);
+
+        Endorsement endorsement = createEndorsement(ORG_MRN, serviceMrn, "1.0", null, null);
+        endorsement.setServiceLevel("instance");
+        given(this.endorsementRepository.save(endorsement)).willReturn(endorsement);
+        given(this.endorsementRepository.findByOrgMrnAndServiceMrn(ORG_MRN, serviceMrn)).willReturn(endorsement);
+        endorsementService.saveEndorsement(endorsement);
+        assertEquals(endorsement, endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, serviceMrn, "1.0"));
+        verify(this.endorsementRepository, times(1)).findByOrgMrnAndServiceMrn(ORG_MRN, serviceMrn);
+    }
+
+    @Test
+    public void lookupsIgnoreTheCaseOfTheKey() {
+        String serviceMrn = "urn:mrn:mcp:service:idp1:dma:instance:Mixed-Case";
+        Endorsement endorsement = createEndorsement(ORG_MRN, serviceMrn, "1.0-RC", null, null);
+        this.endorsementExistenceFilter.add(endorsement);
+        // Rows with null key parts are skipped rather than failing the filter
+        this.endorsementExistenceFilter.add(createEndorsement(ORG_MRN, serviceMrn, null, null, null));
+        String upperOrgMrn = ORG_MRN.toUpperCase(Locale.ROOT);
+        String lowerServiceMrn = serviceMrn.toLowerCase(Locale.ROOT);
+        given(this.endorsementRepository.findByOrgMrnAndServiceMrn(upperOrgMrn, lowerServiceMrn)).willReturn(endorsement);
+
+        assertEquals(endorsement, endorsementService.getByOrgMrnAndServiceMrnAndServiceVersion(upperOrgMrn, lowerServiceMrn, "1.0-rc"));
+    }
+
+    @Test
+    public void hierarchyIsNestedByParent() {
+        String spec = "urn:mrn:mcp:service:idp1:dma:specification:nw-nm";
+        String design = "urn:mrn:mcp:service:idp1:dma:design:nw-nm";
+        given(this.endorsementRepository.findHierarchy(spec, "1.0", null, 2)).willReturn(Arrays.asList(
+                createEndorsement(ORG_MRN, design, "0.3", spec, "1.0"),
+                createEndorsement(ORG_MRN + "2", design, "0.3", spec, "1.0"),
+                createEndorsement(ORG_MRN, INSTANCE_MRN, "0.1", design, "0.3")));
+
+        List<EndorsementNode> hierarchy = endorsementService.getHierarchy(spec, "1.0", null, 2);
+        assertEquals(1, hierarchy.size());
+        assertEquals(design, hierarchy.get(0).getServiceMrn());
+        assertEquals(2, hierarchy.get(0).getEndorsements().size());
+        assertEquals(1, hierarchy.get(0).getChildren().size());
+        assertEquals(INSTANCE_MRN, hierarchy.get(0).getChildren().get(0).getServiceMrn());
+        assertEquals(1, hierarchy.get(0).getChildren().get(0).getEndorsements().size());
+    }
+
+    @Test
+    public void deletionsAreReportedInDeltaUntilCompacted() {
+        Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN + ":deleted", "0.1.2", null, null);
+        given(this.endorsementRepository.findByUpdatedAtAfter(any(), any(), any())).willReturn(Collections.emptyList());
+        Date since = new Date(System.currentTimeMillis() - 60000);
+        given(this.endorsementRepository.deleteByOrgMrnAndServiceMrnAndServiceVersion(ORG_MRN, endorsement.getServiceMrn(), "0.1.2")).willReturn(1);
+        assertTrue(endorsementService.deleteEndorsement(ORG_MRN, endorsement.getServiceMrn(), "0.1.2"));
+        // Nothing is recorded for an endorsement that did not exist
+        assertFalse(endorsementService.deleteEndorsement(ORG_MRN, endorsement.getServiceMrn(), "0.1.3"));
+
+        EndorsementDelta delta = endorsementService.getChangesSince(DeltaCursor.since(since));
+        assertEquals(1, delta.getDeleted().stream().filter(tombstone -> endorsement.getServiceMrn().equals(tombstone.getServiceMrn())).count());
+        assertTrue(delta.getWatermark().after(since));
+        assertTrue(delta.getWatermark().before(new Date()));
+        // Deltas from before the retention of the tombstones are refused
+        assertNull(endorsementService.getChangesSince(DeltaCursor.since(new Date(0))));
+
+        EndorsementTombstone expired = new EndorsementTombstone(endorsement, new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31)));
+        endorsementTombstoneRepository.save(expired);
+        endorsementTombstoneCompactor.compact();
+        assertFalse(endorsementTombstoneRepository.findById(expired.getId()).isPresent());
+        assertEquals(delta.getDeleted().size(), endorsementService.getChangesSince(DeltaCursor.since(since)).getDeleted().size());
+    }
+
+    @Test
+    public void replacedVersionsAreReportedInDelta() {
+        String serviceMrn = INSTANCE_MRN + ":replaced";
+        Endorsement stored = createEndorsement(ORG_MRN, serviceMrn, "0.1", null, null);
+        stored.setServiceLevel("instance");
+        stored.setCreatedAt(new Date());
+        given(this.endorsementRepository.findKeysForUpdate(any())).willReturn(Collections.singletonList(stored));
+        given(this.endorsementRepository.findByUpdatedAtAfter(any(), any(), any())).willReturn(Collections.emptyList());
+        Date since = new Date(System.currentTimeMillis() - 60000);
+
+        Endorsement endorsement = createEndorsement(ORG_MRN, serviceMrn, "0.2", null, null);
+        endorsement.setServiceLevel("instance");
+        endorsementService.upsertEndorsement(endorsement);
+        // Endorsing the same version again replaces nothing
+        Endorsement again = createEndorsement(ORG_MRN, serviceMrn, "0.1", null, null);
+        again.setServiceLevel("instance");
+        endorsementService.upsertEndorsements(Collections.singletonList(again));
+
+        List<EndorsementTombstone> deleted = endorsementService.getChangesSince(DeltaCursor.since(since)).getDeleted().stream()
+                .filter(tombstone -> serviceMrn.equals(tombstone.getServiceMrn()))
+                .collect(Collectors.toList());
+        assertEquals(1, deleted.size());
+        assertEquals(ORG_MRN, deleted.get(0).getOrgMrn());
+        assertEquals("0.1", deleted.get(0).getServiceVersion());
+    }
+
+    @Test
+    public void deltaIsPagedInTimeOrder() {
+        long base = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+        List<Endorsement> endorsements = new ArrayList<>();
+        for (long i = 1; i <= 3; i++) {
+            Endorsement endorsement = createEndorsement(ORG_MRN, INSTANCE_MRN + ":" + i, "0.1", null, null);
+            ReflectionTestUtils.setField(endorsement, "id", i);
+            endorsement.setUpdatedAt(new Date(base + Math.min(i, 2)));
+            endorsements.add(endorsement);
+        }
+        // Answers like the query would from the endorsements above
+        given(this.endorsementRepository.findByUpdatedAtAfter(any(), any(), any())).willAnswer(invocation -> {
+            long updatedAt = invocation.<Date>getArgument(0).getTime();
+            long id = invocation.getArgument(1);
+            return endorsements.stream()
+                    .filter(e -> e.getUpdatedAt().getTime() > updatedAt || (e.getUpdatedAt().getTime() == updatedAt && e.getId() > id))
+                    .limit(invocation.<Pageable>getArgument(2).getPageSize())
+                    .collect(Collectors.toList());
+        });
+        EndorsementTombstone first = endorsementTombstoneRepository.save(new EndorsementTombstone(endorsements.get(0), new Date(base + 2)));
+        EndorsementTombstone second = endorsementTombstoneRepository.save(new EndorsementTombstone(endorsements.get(0), new Date(base + 3)));
+        Object service = AopTestUtils.getTargetObject(endorsementService);
+        ReflectionTestUtils.setField(service, "deltaPageSize", 2);
+        try {
+            // A deletion comes before the endorsements updated at the same time
+            EndorsementDelta delta = endorsementService.getChangesSince(DeltaCursor.since(new Date(base)));
+            assertEquals(Collections.singletonList(1L), delta.getEndorsements().stream().map(Endorsement::getId).collect(Collectors.toList()));
+            assertEquals(Collections.singletonList(first.getId()), delta.getDeleted().stream().map(EndorsementTombstone::getId).collect(Collectors.toList()));
+            assertEquals(base + 2, delta.getWatermark().getTime());
+
+            delta = endorsementService.getChangesSince(DeltaCursor.decode(delta.getNextCursor()));
+            assertEquals(Arrays.asList(2L, 3L), delta.getEndorsements().stream().map(Endorsement::getId).collect(Collectors.toList()));
+            assertTrue(delta.getDeleted().isEmpty());
+
+            delta = endorsementService.getChangesSince(DeltaCursor.decode(delta.getNextCursor()));
+            assertTrue(delta.getEndorsements().isEmpty());
+            assertEquals(Collections.singletonList(second.getId()), delta.getDeleted().stream().map(EndorsementTombstone::getId).collect(Collectors.toList()));
+            assertNull(delta.getNextCursor());
+            assertEquals(base + 3, delta.getWatermark().getTime());
+        } finally {
+            ReflectionTestUtils.setField(service, "deltaPageSize", 1000);
+            endorsementTombstoneRepository.deleteAll(Arrays.asList(first, second));
+        }
+    }
+
+    private static Endorsement createEndorsement(String orgMrn, String serviceMrn, String serviceVersion, String parentMrn, String parentVersion) {
+        Endorsement endorsement = new Endorsement();
+        endorsement.setOrgMrn(orgMrn);
+        endorsement.setServiceMrn(serviceMrn);
+        endorsement.setServiceVersion(serviceVersion);
+        endorsement.setParentMrn(parentMrn);
+        endorsement.setParentVersion(parentVersion);
+        return endorsement;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import net.maritimeconnectivity.endorsement.controllers.TokenGenerator;
+import org.junit.After;
+import org.junit.Test;
+import org.keycloak.KeycloakSecurityContext;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.keycloak.representations.AccessToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccessControlUtilTest {
+
+    @After
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void checksOrgAndPermissionsIgnoringCase() {
+        SecurityContextHolder.getContext().setAuthentication(TokenGenerator.generateKeycloakToken("urn:mrn:mcp:org:idp1:dma", "ROLE_USER", "MCADMIN, OrgAdmin"));
+        assertTrue(AccessControlUtil.hasAccessToOrg("urn:mrn:mcp:org:idp1:DMA"));
+        assertFalse(AccessControlUtil.hasAccessToOrg("urn:mrn:mcp:org:idp1:sma"));
+        assertFalse(AccessControlUtil.hasAccessToOrg(" "));
+        assertTrue(AccessControlUtil.hasPermission("MCADMIN"));
+        assertTrue(AccessControlUtil.hasPermission("orgadmin"));
+        assertFalse(AccessControlUtil.hasPermission("ADMIN"));
+        assertFalse(AccessControlUtil.hasPermission(null));
+    }
+
+    @Test
+    public void keepsParsedClaimsPerToken() {
+        KeycloakAuthenticationToken auth = TokenGenerator.generateKeycloakToken("urn:mrn:mcp:org:idp1:dma", "ROLE_USER", "MCADMIN");
+        AccessToken token = ((KeycloakSecurityContext) auth.getCredentials()).getToken();
+        token.id("token-1");
+        SecurityContextHolder.getContext().setAuthentication(auth);
+        assertTrue(AccessControlUtil.hasAccessToOrg("urn:mrn:mcp:org:idp1:dma"));
+
+        // The claims of a token are parsed once, so later changes to the token object are not seen
+        token.setOtherClaims(AccessControlUtil.ORG_PROPERTY_NAME, "urn:mrn:mcp:org:idp1:sma");
+        assertTrue(AccessControlUtil.hasAccessToOrg("urn:mrn:mcp:org:idp1:dma"));
+
+        SecurityContextHolder.getContext().setAuthentication(TokenGenerator.generateKeycloakToken("urn:mrn:mcp:org:idp1:sma", "ROLE_USER", ""));
+        assertFalse(AccessControlUtil.hasAccessToOrg("urn:mrn:mcp:org:idp1:dma"));
+        assertFalse(AccessControlUtil.hasPermission("MCADMIN"));
+    }
+}
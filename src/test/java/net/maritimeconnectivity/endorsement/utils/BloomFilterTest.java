@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    private static final String ORG_MRN = "urn:mrn:mcp:org:idp1:dma";
+
+    @Test
+    public void addedKeysAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:" + i, "1.0"));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:" + i, "1.0")));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsCloseToTheTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:" + i, "1.0"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:" + i, "2.0"))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void partsAreHashedSeparately() {
+        assertNotEquals(BloomFilter.hash("ab", "c"), BloomFilter.hash("a", "bc"));
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        filter.put(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:nw-nm", "0.1.2"));
+        assertFalse(filter.mightContain(BloomFilter.hash(ORG_MRN, "urn:mrn:mcp:service:idp1:dma:instance:nw-nm", "0.1.3")));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GradientLimitTest {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private long now = 0;
+
+    @Test
+    public void growsWhileLatencyHoldsAndShrinksWhenItRises() {
+        GradientLimit limit = new GradientLimit(20, 5, 200, 2.0, 1.0, WINDOW, 10, now);
+        for (int i = 0; i < 5; i++) {
+            window(limit, RTT, limit.getLimit());
+        }
+        int grown = limit.getLimit();
+        assertTrue("Limit did not grow: " + grown, grown > 20);
+
+        window(limit, 10 * RTT, grown);
+        int cut = limit.getLimit();
+        assertTrue("Limit was not cut: " + cut, cut < grown);
+        assertTrue("Limit was cut more than half: " + cut, cut >= grown / 2);
+    }
+
+    @Test
+    public void keepsLimitWhenItIsNotUsed() {
+        GradientLimit limit = new GradientLimit(20, 5, 200, 2.0, 1.0, WINDOW, 10, now);
+        window(limit, RTT, 1);
+        window(limit, 10 * RTT, 1);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        GradientLimit limit = new GradientLimit(20, 5, 30, 2.0, 1.0, WINDOW, 10, now);
+        for (int i = 0; i < 20; i++) {
+            window(limit, RTT, limit.getLimit());
+        }
+        assertEquals(30, limit.getLimit());
+        long rtt = RTT;
+        for (int i = 0; i < 15; i++) {
+            rtt *= 4;
+            window(limit, rtt, limit.getLimit());
+        }
+        assertEquals(5, limit.getLimit());
+    }
+
+    private void window(GradientLimit limit, long rtt, int inFlight) {
+        for (int i = 0; i < 10; i++) {
+            now += WINDOW / 10;
+            limit.onSample(rtt, inFlight, now);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.endorsement.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class MrnUtilTest {
+
+    private static final String[] VALID = {
+            "urn:mrn:mcp:org:idp1:dma",
+            "urn:mrn:mcp:user:idp1:dma:tgc",
+            "URN:MRN:MCP:Vessel:IDP-1:imo:1234567",
+            "urn:mrn:mcp:service:idp1:dma:instance:nw-nm",
+            "urn:mrn:mcp:service:idp1:dma:Design:nw-nm/v1%2F",
+            "urn:mrn:mcp:service:idp1::instance::x",
+            "urn:mrn:mcp:device:ab:%41:@!$&'()*+,;=~._-",
+    };
+
+    private static final String[] INVALID = {
+            "urn:mrn:mcp:org:idp1:",
+            "urn:mrn:mcp:org:idp1:/dma",
+            "urn:mrn:mcp:org:-idp:dma",
+            "urn:mrn:mcp:org:i:dma",
+            "urn:mrn:mcp:org:abcdefghijklmnopqrstuvw:dma",
+            "urn:mrn:mcp:ship:idp1:dma",
+            "urn:mrn:mcl:org:dma",
+            "urn:mrn:mcp:org:idp1:dma%4",
+            "urn:mrn:mcp:org:idp1:dma%zz",
+            "urn:mrn:mcp:org:idp1:dm a",
+            "urn:mrn:mcp:org:idp1:dmæ",
+            "urn:mrn:mcp:service:idp1:dma:instance",
+            "urn:mrn:mcp:service:idp1:dma:instance::",
+            "urn:mrn:mcp:service:idp1:dma:instances:nw-nm",
+    };
+
+    private static final Pattern SERVICE_LEVEL_PATTERN = Pattern.compile("^(specification|design|instance)$", Pattern.CASE_INSENSITIVE);
+
+    @Test
+    public void acceptsValidMrns() {
+        for (String mrn : VALID) {
+            assertEquals(mrn, true, matchesRegex(mrn));
+            MrnUtil.parseMrn(mrn);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidMrns() {
+        for (String mrn : INVALID) {
+            assertEquals(mrn, false, matchesRegex(mrn));
+            try {
+                MrnUtil.parseMrn(mrn);
+                fail(mrn);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void parsesSegments() {
+        ParsedMrn mrn = MrnUtil.parseMrn("urn:mrn:mcp:service:idp1:dma:instance:nw-nm");
+        assertEquals(ParsedMrn.EntityType.SERVICE, mrn.getEntityType());
+        assertEquals("idp1", mrn.getIdp());
+        assertEquals("instance", mrn.getServiceLevel());
+        assertEquals(25, mrn.getNssStart());
+
+        ParsedMrn org = MrnUtil.parseMrn("urn:mrn:mcp:org:idp1:dma");
+        assertEquals(ParsedMrn.EntityType.ORG, org.getEntityType());
+        assertNull(org.getServiceLevel());
+    }
+
+    /**
+     * Compares the parser with the regular expressions on random mutations of valid MRNs
+     */
+    @Test
+    public void agreesWithRegex() {
+        Random random = new Random(42);
+        String alphabet = "aZ09-._~%fF:/@!;= æ";
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder mrn = new StringBuilder(VALID[random.nextInt(VALID.length)]);
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                int position = random.nextInt(mrn.length() + 1);
+                if (random.nextBoolean() && position < mrn.length()) {
+                    mrn.deleteCharAt(position);
+                } else {
+                    mrn.insert(position, alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            boolean parsed;
+            try {
+                MrnUtil.parseMrn(mrn.toString());
+                parsed = true;
+            } catch (IllegalArgumentException e) {
+                parsed = false;
+            }
+            assertEquals(mrn.toString(), matchesRegex(mrn.toString()), parsed);
+        }
+    }
+
+    /**
+     * The regular expression based validation that parseMrn replaced
+     */
+    private static boolean matchesRegex(String mrn) {
+        if (!MrnUtil.MRN_PATTERN.matcher(mrn).matches()) {
+            return false;
+        }
+        String[] parts = mrn.split(":");
+        if (parts[3].equalsIgnoreCase("service")) {
+            return MrnUtil.MRN_SERVICE_PATTERN.matcher(mrn).matches() && parts.length >= 8 && SERVICE_LEVEL_PATTERN.matcher(parts[6]).matches();
+        }
+        return true;
+    }
+}